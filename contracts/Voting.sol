@@ -23,11 +23,15 @@ contract Voting {
     
     // Track who has voted
     mapping(address => bool) public voters;
+
+    // Track voter commitments already counted through voteBatch
+    mapping(bytes32 => bool) public votedCommitments;
     
     // Events
     event CandidateAdded(uint256 indexed candidateId, string name, string party);
     event CandidateRemoved(uint256 indexed candidateId);
     event VotedEvent(uint256 indexed candidateId, address voter);
+    event CommitmentVoted(bytes32 indexed commitment, uint256 indexed candidateId);
     event OwnershipTransferred(address indexed previousOwner, address indexed newOwner);
 
     // Modifier to restrict access to owner
@@ -92,6 +96,30 @@ contract Voting {
         // Trigger voted event
         emit VotedEvent(_candidateId, msg.sender);
     }
+
+    // Cast many votes relayed by the owner in one transaction. Each voter is
+    // identified by a commitment instead of an address; a commitment that
+    // already voted or names an invalid candidate is skipped, not reverted,
+    // so one bad entry doesn't sink the whole batch.
+    function voteBatch(bytes32[] calldata _commitments, uint256[] calldata _candidateIds) external onlyOwner {
+        require(_commitments.length == _candidateIds.length, "Length mismatch");
+
+        for (uint256 i = 0; i < _commitments.length; i++) {
+            bytes32 commitment = _commitments[i];
+            uint256 candidateId = _candidateIds[i];
+
+            if (votedCommitments[commitment]) {
+                continue;
+            }
+            if (candidateId == 0 || candidateId > candidatesCount || !candidates[candidateId].isActive) {
+                continue;
+            }
+
+            votedCommitments[commitment] = true;
+            candidates[candidateId].voteCount++;
+            emit CommitmentVoted(commitment, candidateId);
+        }
+    }
     
     // Get candidate details
     function getCandidate(uint256 _candidateId) public view returns (
@@ -9,13 +9,21 @@ import net.codejava.service.CandidateService;
 import net.codejava.service.UserService;
 import net.codejava.service.EmailService;
 import net.codejava.service.VoteService;
+import net.codejava.service.VotingStatsService;
+import net.codejava.service.LiveResultsBroadcaster;
+import net.codejava.service.ChainAuditService;
+import net.codejava.service.ChainCheckpointService;
+import net.codejava.service.ChainEventIndexer;
+import net.codejava.service.BlockchainService;
 import net.codejava.helper.EmailTemplate;
 import net.codejava.helper.Message;
+import java.util.HashMap;
 import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.time.LocalDateTime;
@@ -44,6 +52,24 @@ public class AdminController {
     @Autowired
     private VoteService voteService;
     
+    @Autowired
+    private VotingStatsService votingStatsService;
+    
+    @Autowired
+    private LiveResultsBroadcaster liveResultsBroadcaster;
+    
+    @Autowired
+    private ChainAuditService chainAuditService;
+    
+    @Autowired
+    private ChainCheckpointService chainCheckpointService;
+
+    @Autowired
+    private ChainEventIndexer chainEventIndexer;
+    
+    @Autowired
+    private BlockchainService blockchainService;
+    
     // ==================== ELECTION MANAGEMENT ====================
     
     @GetMapping("/elections")
@@ -231,7 +257,52 @@ public class AdminController {
     @GetMapping("/voting/stats")
     @ResponseBody
     public Map<String, Object> getVotingStats() {
-        return voteService.getVotingStatistics();
+        return votingStatsService.getStatistics();
+    }
+    
+    @PostMapping("/voting/audit")
+    @ResponseBody
+    public Map<String, Object> auditChain() {
+        return chainAuditService.startAudit();
+    }
+    
+    @GetMapping("/voting/audit")
+    @ResponseBody
+    public Map<String, Object> getAuditStatus() {
+        return chainAuditService.getAuditStatus();
+    }
+    
+    @GetMapping("/voting/verification")
+    @ResponseBody
+    public Map<String, Object> getVerificationStatus() {
+        return chainCheckpointService.getStatus();
+    }
+    
+    @PostMapping("/voting/verification/reverify")
+    @ResponseBody
+    public Map<String, Object> reverifyChain() {
+        chainCheckpointService.reverify();
+        return chainCheckpointService.getStatus();
+    }
+    
+    @GetMapping("/voting/chain-index")
+    @ResponseBody
+    public Map<String, Object> getChainIndex() {
+        Map<String, Object> index = new HashMap<>(chainEventIndexer.getStatus());
+        index.put("candidates", chainEventIndexer.getCandidates());
+        return index;
+    }
+    
+    // straight from the contract, every candidate read at one block
+    @GetMapping("/voting/chain-tally")
+    @ResponseBody
+    public BlockchainService.CandidateSnapshot getChainTally() {
+        return blockchainService.getAllCandidates();
+    }
+    
+    @GetMapping("/voting/stream")
+    public SseEmitter streamVotingStats() {
+        return liveResultsBroadcaster.subscribe();
     }
     
     // ==================== ENHANCED CANDIDATE MANAGEMENT ====================
@@ -5,7 +5,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.security.Principal;
-import java.util.List;
 import javax.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -18,7 +17,6 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import net.codejava.helper.EmailTemplate;
 import net.codejava.helper.Message;
 import net.codejava.model.User;
-import net.codejava.model.Candidate;
 import net.codejava.repository.UserRepo;
 import net.codejava.repository.VoteRepo;
 import net.codejava.service.EmailService;
@@ -27,6 +25,7 @@ import net.codejava.service.VoteService;
 import net.codejava.smartcontract.VoteSmartContract;
 
 import net.codejava.service.CandidateService;
+import net.codejava.service.LiveTallyService;
 
 import org.springframework.web.bind.annotation.RequestParam;
 
@@ -64,6 +63,9 @@ public class HomeController {
 	@Autowired
 	CandidateService candidateService;
 
+	@Autowired
+	LiveTallyService liveTallyService;
+
 	// ---------------------------USER HOME
 	// PAGE--------------------------------------//
 
@@ -90,11 +92,8 @@ public class HomeController {
 
 		// Expose simple results data for users when voting has finished
 		try {
-			List<Candidate> candidates = candidateService.getAllCandidates();
-			long totalVotes = 0;
-			for (Candidate c : candidates) totalVotes += c.getVoteCount();
-			model.addAttribute("allCandidates", candidates);
-			model.addAttribute("totalVotes", totalVotes);
+			model.addAttribute("allCandidates", liveTallyService.getCandidates());
+			model.addAttribute("totalVotes", liveTallyService.getTotalVotes());
 			model.addAttribute("votingEnded", userservice.getUser("admin").getVotestatus().equals("2"));
 		} catch (Exception e) {
 			System.err.println("Failed to attach voting results to user home: " + e.getMessage());
@@ -138,12 +137,7 @@ public class HomeController {
 			voteSmartContract.correctTableValues();
 		}
 
-		if (!voteservice.userExists(name)) {
-			return "redirect:/public/home/faceverification";
-		}
-		
-		session.setAttribute("status", new Message("You have already voted. Thanks!", "danger"));
-		return "redirect:/public/home";
+		return "redirect:/public/home/faceverification";
 	}
 
 
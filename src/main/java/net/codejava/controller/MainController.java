@@ -4,11 +4,11 @@ package net.codejava.controller;
 
 import java.io.File;
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import org.apache.tomcat.util.http.fileupload.FileUtils;
@@ -28,17 +28,16 @@ import org.springframework.web.multipart.MultipartFile;
 import net.codejava.helper.EmailTemplate;
 import net.codejava.helper.FileUploadUtil;
 import net.codejava.helper.Message;
-import net.codejava.helper.SHA256;
-import net.codejava.model.Candidate;
 import net.codejava.model.Pending;
 import net.codejava.model.User;
 import net.codejava.model.Votedata;
-import net.codejava.repository.CandidateRepo;
 import net.codejava.repository.PendingRepo;
 import net.codejava.repository.UserRepo;
 import net.codejava.repository.VoteRepo;
 import net.codejava.service.EmailService;
+import net.codejava.service.MerkleBatchService;
 import net.codejava.service.UserService;
+import net.codejava.service.VoteReceiptService;
 import org.springframework.web.bind.annotation.RequestBody;
 
 // --------------------------------------------------------------------------------------------- //
@@ -67,10 +66,13 @@ public class MainController {
 	private BCryptPasswordEncoder passwordEncoder;
 
 	@Autowired
-	private CandidateRepo candidaterepo;
+	private EmailTemplate emailTemplate;
 
 	@Autowired
-	private EmailTemplate emailTemplate;
+	private MerkleBatchService merkleBatchService;
+
+	@Autowired
+	private VoteReceiptService voteReceiptService;
 	// ----------------------------------------------------------------------------//
 
 	// After loging in, users will be redirected to their respective pages
@@ -330,44 +332,34 @@ public class MainController {
 		return "verifyVote.html";
 	}
 
+	@GetMapping("/verify/proof")
+	public ResponseEntity<Map<String, Object>> getInclusionProof(@RequestParam("receipt") String receipt) {
+		Map<String, Object> proof = merkleBatchService.getInclusionProof(receipt);
+		if (proof == null) {
+			return new ResponseEntity<Map<String, Object>>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<Map<String, Object>>(proof, HttpStatus.OK);
+	}
+
 	@PostMapping("verify/verifyvote")
-	public String verifyVote(@RequestParam("currhash") String currhash) throws NoSuchAlgorithmException{
+	public String verifyVote(@RequestParam("currhash") String receipt) {
 
-		Votedata vote=voterepo.findByCurrhash(currhash);
-		
-		String adhaar = vote.getUsername();
-		String previousBlockHash=vote.getPrevhash();
-		User user= repo.findByUsername(adhaar);
-		String partyname="";
+		// the receipt index resolves straight to the stored vote
+		Votedata vote = voteReceiptService.resolve(receipt.trim());
+		if (vote == null) {
+			return "redirect:/verify";
+		}
 
-		String name=user.getFirstname();
-		String email=user.getEmail();
+		User user = repo.findByUsername(vote.getUsername());
+		String name = user.getFirstname();
+		String email = user.getEmail();
 
-		List<String> party=new ArrayList<>();
-		
-		List<Candidate> candidates=candidaterepo.findAll();
-        
-        for (Candidate c : candidates) {
-            party.add(c.getParty());
-        }
-
-			for(String i:party){
-                String[] transaction = {adhaar,name,i};
-                String tempHash= SHA256.getSHA(transaction,previousBlockHash);
-
-                System.out.println(">>>>>>>>>>>Temp Hash Generated>>>>>>>>>>>>>>"+tempHash);
-                if(tempHash.equals(currhash)){
-					partyname=i;
-                    break;
-                }
-            }
-		
-			String f = "Hi  " +name+ " . Your Vote confirmation is here!";
-			String s = "You have voted for this party. Please donot share this information. Hope you had a smooth experience. Thank you";
-			String t = partyname;
-			String message = emailTemplate.getTemplate(f, s, t);
-			String subject = "Vote Confirmation";
-			this.emailservice.sendEmail(subject, message, email);
+		String f = "Hi  " + name + " . Your Vote confirmation is here!";
+		String s = "You have voted for this party. Please donot share this information. Hope you had a smooth experience. Thank you";
+		String t = vote.getCandidate();
+		String message = emailTemplate.getTemplate(f, s, t);
+		String subject = "Vote Confirmation";
+		this.emailservice.sendEmail(subject, message, email);
 
 		return "redirect:/index";
 	}
@@ -25,6 +25,7 @@ import net.codejava.repository.PendingRepo;
 import net.codejava.repository.UserRepo;
 import net.codejava.repository.VoteRepo;
 import net.codejava.service.VoteService;
+import net.codejava.service.LiveTallyService;
 import net.codejava.service.CandidateService;
 import net.codejava.service.UserService;
 import net.codejava.service.EmailService;
@@ -61,6 +62,9 @@ public class UserSecurityController {
 	@Autowired
 	VoteService voteService;
 
+	@Autowired
+	LiveTallyService liveTallyService;
+
 	//all users
 	// @GetMapping("/")
 	// public String getUsers(Principal principle,Model model){
@@ -97,13 +101,8 @@ public class UserSecurityController {
 		System.out.println(userCount+"--------------------"+pendingCount);
 		// Add voting statistics for admin dashboard
 		try {
-			List<Candidate> candidates = candidateService.getAllCandidates();
-			long totalVotes = 0;
-			for (Candidate c : candidates) {
-				totalVotes += c.getVoteCount();
-			}
-			model.addAttribute("allCandidates", candidates);
-			model.addAttribute("totalVotes", totalVotes);
+			model.addAttribute("allCandidates", liveTallyService.getCandidates());
+			model.addAttribute("totalVotes", liveTallyService.getTotalVotes());
 			model.addAttribute("votingEnded", "2".equals(userService.getUser("admin").getVotestatus()));
 		} catch (Exception e) {
 			System.err.println("Failed to load voting stats for admin page: " + e.getMessage());
@@ -231,6 +230,7 @@ public class UserSecurityController {
 			file = new File(path);
 			if (file.exists()) {
 				boolean status = candidateService.deleteCandidates(username, fileName, path);
+				liveTallyService.refreshCandidates();
 				List<Candidate> candidates = candidateService.getAllCandidates();
 				model.addAttribute("allcandidates", candidates);
 				return "redirect:/admin/candidatelist";
@@ -308,6 +308,7 @@ public class UserSecurityController {
 		FileUploadUtil.saveFile(uploadDir, fileName, multipartFile);
 		candidate.setCandidatepic(fileName);
 		Candidate candidateTemp = candidateRepo.save(candidate);
+		liveTallyService.refreshCandidates();
 
 
 		return "redirect:/admin/candidates";
@@ -27,7 +27,9 @@ import net.codejava.service.BlockchainService;
 import net.codejava.repository.VoteRepo;
 import net.codejava.service.CandidateService;
 import net.codejava.service.EmailService;
+import net.codejava.service.LiveTallyService;
 import net.codejava.service.UserService;
+import net.codejava.service.VoteReceiptService;
 import net.codejava.service.VoteService;
 import net.codejava.smartcontract.VoteSmartContract;
 
@@ -63,6 +65,9 @@ public class VoteController {
     @Autowired
     CandidateRepo candidaterepo;
 
+    @Autowired
+    private LiveTallyService liveTallyService;
+
     /**
      * Endpoint to verify face using static_vs_live_verification Python function
      */
@@ -133,16 +138,16 @@ public class VoteController {
             boolean voteSuccess = voteService.isSuccessfull(choice, user.getUsername(), user.getFirstname());
 
             if (voteSuccess) {
-                // Get the vote hash
+                // Get the vote receipt
                 Votedata vote = voteRepo.findByUsername(name);
                 if (vote != null) {
-                    String hash = vote.getCurrhash();
+                    String receipt = VoteReceiptService.receiptOf(vote);
 
                     try {
                         // Send confirmation email
                         String f = "Vote Successfully Recorded";
-                        String s = "Your vote has been successfully recorded. Your unique vote hash (save this for verification): ";
-                        String t = hash;
+                        String s = "Your vote has been successfully recorded. Your unique vote receipt (save this for verification): ";
+                        String t = receipt;
                         String email = user.getEmail();
                         String subject = "Your Vote Has Been Recorded";
                         String message = emailTemplate.getTemplate(f, s, t);
@@ -201,15 +206,21 @@ public class VoteController {
             System.out.println("-------------Winning Party-------------");
             System.out.println(winningParty);
 
+            // Get all candidates with their live vote counts
+            List<Candidate> allCandidates = liveTallyService.getCandidates();
+
             // Get the winning candidate details
-            Candidate winner = candidaterepo.findByParty(winningParty);
+            Candidate winner = null;
+            for (Candidate c : allCandidates) {
+                if (winningParty.equals(c.getParty())) {
+                    winner = c;
+                    break;
+                }
+            }
             if (winner == null) {
                 model.addAttribute("error", "Could not find details for the winning party: " + winningParty);
                 return "result.html";
             }
-
-            // Get all candidates and find the one with most votes
-            List<Candidate> allCandidates = candidateService.getAllCandidates();
             
             // Find candidate with highest votes
             Candidate highestVoted = null;
@@ -247,6 +258,22 @@ public class VoteController {
         return "result.html";
     }
 
+    /**
+     * Endpoint for the voter to follow the background chain submission of their vote
+     */
+    @GetMapping("/status")
+    @ResponseBody
+    public Map<String, Object> voteStatus(Principal principal) {
+        Map<String, Object> status = new HashMap<>();
+        Votedata vote = voteRepo.findByUsername(principal.getName());
+        status.put("voted", vote != null);
+        if (vote != null) {
+            status.put("chainStatus", vote.getChainStatus());
+            status.put("txhash", vote.getTxhash());
+        }
+        return status;
+    }
+
     /**
      * Endpoint to show final vote confirmation page
      */
@@ -0,0 +1,281 @@
+package net.codejava.helper;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Shared SHA-256 hashing for blocks, receipts and Merkle trees. Digests,
+ * encode buffers and hex buffers are kept per thread and reused, so a hash
+ * call allocates nothing but the resulting hex String.
+ */
+public final class HashingCore {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = (byte) i;
+        }
+    }
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    });
+
+    private static final ThreadLocal<Encoder> ENCODER = ThreadLocal.withInitial(Encoder::new);
+    private static final ThreadLocal<byte[]> DIGEST_OUT = ThreadLocal.withInitial(() -> new byte[32]);
+    private static final ThreadLocal<char[]> HEX_OUT = ThreadLocal.withInitial(() -> new char[64]);
+
+    private HashingCore() {
+    }
+
+    /**
+     * The calling thread's SHA-256 digest, reset and ready for use.
+     */
+    public static MessageDigest sha256() {
+        MessageDigest md = SHA256.get();
+        md.reset();
+        return md;
+    }
+
+    /**
+     * The calling thread's encode buffer, emptied. Only valid until the next
+     * call into this class on the same thread.
+     */
+    public static Encoder encoder() {
+        Encoder encoder = ENCODER.get();
+        encoder.reset();
+        return encoder;
+    }
+
+    /**
+     * Block hash over the canonical binary encoding: the data fields and the
+     * previous hash as length-prefixed UTF-8, then timestamp and nonce as
+     * big-endian integers. The nonce comes last so miners can reuse the
+     * digest state of everything before it.
+     */
+    public static String blockHash(String[] data, String previousBlockHash, long timestamp, int nonce) {
+        Encoder e = encodeBlockPrefix(encoder(), data, previousBlockHash, timestamp);
+        e.writeInt(nonce);
+        return hexDigest(e);
+    }
+
+    public static Encoder encodeBlockPrefix(Encoder e, String[] data, String previousBlockHash, long timestamp) {
+        if (data == null) {
+            e.writeInt(-1);
+        } else {
+            e.writeInt(data.length);
+            for (String field : data) {
+                e.writeString(field);
+            }
+        }
+        e.writeString(previousBlockHash);
+        e.writeLong(timestamp);
+        return e;
+    }
+
+    /**
+     * Same digest as SHA-256 over Arrays.toString(data) + previousBlockHash +
+     * timestamp + nonce, the encoding blocks used before the binary one.
+     */
+    public static String legacyBlockHash(String[] data, String previousBlockHash, long timestamp, int nonce) {
+        Encoder e = encoder();
+        if (data == null) {
+            e.writeUtf8("null");
+        } else {
+            e.writeUtf8("[");
+            for (int i = 0; i < data.length; i++) {
+                if (i > 0) {
+                    e.writeUtf8(", ");
+                }
+                e.writeUtf8(String.valueOf(data[i]));
+            }
+            e.writeUtf8("]");
+        }
+        e.writeUtf8(String.valueOf(previousBlockHash));
+        e.writeDecimal(timestamp);
+        e.writeDecimal(nonce);
+        return hexDigest(e);
+    }
+
+    /**
+     * Same digest as SHA-256 over the plain concatenation of input and suffix.
+     */
+    public static String concatHash(String[] input, String suffix) {
+        Encoder e = encoder();
+        for (String str : input) {
+            e.writeUtf8(String.valueOf(str));
+        }
+        e.writeUtf8(String.valueOf(suffix));
+        return hexDigest(e);
+    }
+
+    public static String hexDigest(Encoder e) {
+        MessageDigest md = sha256();
+        md.update(e.buf, 0, e.len);
+        return toHex(finish(md));
+    }
+
+    /**
+     * Completes the digest into the thread's reusable 32-byte buffer.
+     */
+    public static byte[] finish(MessageDigest md) {
+        byte[] out = DIGEST_OUT.get();
+        try {
+            md.digest(out, 0, out.length);
+        } catch (DigestException e) {
+            throw new RuntimeException("SHA-256 digest failed", e);
+        }
+        return out;
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = bytes.length == 32 ? HEX_OUT.get() : new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            chars[2 * i] = HEX_DIGITS[b >>> 4];
+            chars[2 * i + 1] = HEX_DIGITS[b & 0x0f];
+        }
+        return new String(chars, 0, bytes.length * 2);
+    }
+
+    public static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Hex string has odd length");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ((hexValue(hex.charAt(2 * i)) << 4) | hexValue(hex.charAt(2 * i + 1)));
+        }
+        return bytes;
+    }
+
+    private static int hexValue(char c) {
+        int v = c < 128 ? HEX_VALUES[c] : -1;
+        if (v < 0) {
+            throw new IllegalArgumentException("Not a hex digit: " + c);
+        }
+        return v;
+    }
+
+    /**
+     * Growable byte buffer with the writers used by the hash encodings.
+     */
+    public static final class Encoder {
+        private byte[] buf = new byte[256];
+        private int len;
+
+        public void reset() {
+            len = 0;
+        }
+
+        public byte[] buffer() {
+            return buf;
+        }
+
+        public int length() {
+            return len;
+        }
+
+        public void writeInt(int v) {
+            ensure(4);
+            buf[len++] = (byte) (v >>> 24);
+            buf[len++] = (byte) (v >>> 16);
+            buf[len++] = (byte) (v >>> 8);
+            buf[len++] = (byte) v;
+        }
+
+        public void writeLong(long v) {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+
+        /**
+         * Length-prefixed UTF-8, with -1 as the length of null.
+         */
+        public void writeString(String s) {
+            if (s == null) {
+                writeInt(-1);
+                return;
+            }
+            int lengthAt = len;
+            writeInt(0);
+            writeUtf8(s);
+            int n = len - lengthAt - 4;
+            buf[lengthAt] = (byte) (n >>> 24);
+            buf[lengthAt + 1] = (byte) (n >>> 16);
+            buf[lengthAt + 2] = (byte) (n >>> 8);
+            buf[lengthAt + 3] = (byte) n;
+        }
+
+        /**
+         * UTF-8 bytes of s, identical to s.getBytes(UTF_8) including the '?'
+         * written for unpaired surrogates.
+         */
+        public void writeUtf8(String s) {
+            int n = s.length();
+            ensure(n * 3);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buf[len++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[len++] = (byte) (0xc0 | (c >> 6));
+                    buf[len++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[len++] = (byte) (0xf0 | (cp >> 18));
+                    buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buf[len++] = (byte) (0x80 | (cp & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    buf[len++] = (byte) '?';
+                } else {
+                    buf[len++] = (byte) (0xe0 | (c >> 12));
+                    buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    buf[len++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+        }
+
+        /**
+         * ASCII decimal digits of v, as Long.toString would print them.
+         */
+        public void writeDecimal(long v) {
+            if (v == Long.MIN_VALUE) {
+                writeUtf8(Long.toString(v));
+                return;
+            }
+            ensure(20);
+            if (v < 0) {
+                buf[len++] = '-';
+                v = -v;
+            }
+            int start = len;
+            do {
+                buf[len++] = (byte) ('0' + (v % 10));
+                v /= 10;
+            } while (v != 0);
+            for (int i = start, j = len - 1; i < j; i++, j--) {
+                byte t = buf[i];
+                buf[i] = buf[j];
+                buf[j] = t;
+            }
+        }
+
+        private void ensure(int extra) {
+            if (len + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+            }
+        }
+    }
+}
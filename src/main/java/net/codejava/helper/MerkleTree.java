@@ -0,0 +1,111 @@
+package net.codejava.helper;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary SHA-256 Merkle tree over vote hashes. Leaves and inner nodes are
+ * hashed with different prefixes so a leaf can never pass for a node. An odd
+ * node at the end of a level is carried up unchanged rather than paired
+ * with a copy of itself.
+ */
+public class MerkleTree {
+
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+
+    public static String root(List<String> leaves) {
+        if (leaves.isEmpty()) {
+            throw new IllegalArgumentException("Merkle tree needs at least one leaf");
+        }
+        byte[][] level = hashLeaves(leaves);
+        while (level.length > 1) {
+            level = nextLevel(level);
+        }
+        return HashingCore.toHex(level[0]);
+    }
+
+    /**
+     * Sibling hashes from the leaf at index up to the root, one per level
+     * where the node has a sibling.
+     */
+    public static List<ProofStep> proof(List<String> leaves, int index) {
+        if (index < 0 || index >= leaves.size()) {
+            throw new IllegalArgumentException("Leaf index out of range: " + index);
+        }
+        List<ProofStep> proof = new ArrayList<>();
+        byte[][] level = hashLeaves(leaves);
+        while (level.length > 1) {
+            int sibling = (index % 2 == 0) ? index + 1 : index - 1;
+            if (sibling < level.length) {
+                proof.add(new ProofStep(HashingCore.toHex(level[sibling]), sibling < index));
+            }
+            level = nextLevel(level);
+            index /= 2;
+        }
+        return proof;
+    }
+
+    public static boolean verify(String leaf, List<ProofStep> proof, String root) {
+        MessageDigest md = HashingCore.sha256();
+        byte[] node = hashLeaf(md, leaf);
+        for (ProofStep step : proof) {
+            byte[] sibling = HashingCore.fromHex(step.getHash());
+            node = step.isLeft() ? hashNode(md, sibling, node) : hashNode(md, node, sibling);
+        }
+        return HashingCore.toHex(node).equals(root);
+    }
+
+    private static byte[][] hashLeaves(List<String> leaves) {
+        MessageDigest md = HashingCore.sha256();
+        byte[][] level = new byte[leaves.size()][];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = hashLeaf(md, leaves.get(i));
+        }
+        return level;
+    }
+
+    private static byte[] hashLeaf(MessageDigest md, String leaf) {
+        HashingCore.Encoder e = HashingCore.encoder();
+        e.writeUtf8(leaf);
+        md.update(LEAF_PREFIX);
+        md.update(e.buffer(), 0, e.length());
+        return md.digest();
+    }
+
+    private static byte[][] nextLevel(byte[][] level) {
+        MessageDigest md = HashingCore.sha256();
+        byte[][] next = new byte[(level.length + 1) / 2][];
+        for (int i = 0; i < next.length; i++) {
+            int left = 2 * i;
+            next[i] = (left + 1 < level.length) ? hashNode(md, level[left], level[left + 1]) : level[left];
+        }
+        return next;
+    }
+
+    private static byte[] hashNode(MessageDigest md, byte[] left, byte[] right) {
+        md.update(NODE_PREFIX);
+        md.update(left);
+        md.update(right);
+        return md.digest();
+    }
+
+    public static class ProofStep {
+        private final String hash;
+        private final boolean left; // sibling sits to the left of the running hash
+
+        public ProofStep(String hash, boolean left) {
+            this.hash = hash;
+            this.left = left;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public boolean isLeft() {
+            return left;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package net.codejava.helper;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-core nonce search for block mining. Each worker takes every n-th
+ * nonce of the 32-bit space, hashes the block prefix once, and per attempt
+ * only clones that digest state and feeds it the four nonce bytes. Hashes
+ * are judged by leading zero bits on the raw digest.
+ */
+public final class ProofOfWork {
+
+    private static final long MAX_NONCE = 0xffffffffL;
+    // attempts between checks of the stop flag and deadline
+    private static final int CHECK_EVERY = 1 << 12;
+    private static final int WORKERS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(WORKERS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "pow-miner-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private ProofOfWork() {
+    }
+
+    /**
+     * Finds a nonce whose hash over prefix + nonce (big-endian int) starts
+     * with zeroBits zero bits. Returns null if timeoutMs (0 for none) runs
+     * out, the nonce space is exhausted or the caller is interrupted.
+     */
+    public static Integer mine(byte[] prefix, int zeroBits, long timeoutMs) {
+        if (zeroBits < 0 || zeroBits > 256) {
+            throw new IllegalArgumentException("zeroBits must be between 0 and 256: " + zeroBits);
+        }
+        long deadline = timeoutMs > 0 ? System.nanoTime() + timeoutMs * 1_000_000L : 0;
+        AtomicBoolean stop = new AtomicBoolean();
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(POOL);
+        List<Future<Integer>> futures = new ArrayList<>(WORKERS);
+        for (int w = 0; w < WORKERS; w++) {
+            final int worker = w;
+            futures.add(completion.submit(() -> search(prefix, zeroBits, worker, stop, deadline)));
+        }
+        try {
+            for (int i = 0; i < WORKERS; i++) {
+                Integer nonce = completion.take().get();
+                if (nonce != null) {
+                    return nonce;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Mining worker failed", e.getCause());
+        } finally {
+            stop.set(true);
+            for (Future<Integer> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    public static boolean hasLeadingZeroBits(byte[] digest, int zeroBits) {
+        int fullBytes = zeroBits >>> 3;
+        for (int i = 0; i < fullBytes; i++) {
+            if (digest[i] != 0) {
+                return false;
+            }
+        }
+        int rest = zeroBits & 7;
+        return rest == 0 || ((digest[fullBytes] & 0xff) >>> (8 - rest)) == 0;
+    }
+
+    private static Integer search(byte[] prefix, int zeroBits, int worker, AtomicBoolean stop, long deadline) throws Exception {
+        MessageDigest prefixState = HashingCore.sha256();
+        prefixState.update(prefix);
+        byte[] nonceBytes = new byte[4];
+        byte[] out = new byte[32];
+        int sinceCheck = 0;
+        for (long n = worker; n <= MAX_NONCE; n += WORKERS) {
+            if (++sinceCheck == CHECK_EVERY) {
+                sinceCheck = 0;
+                if (stop.get() || Thread.currentThread().isInterrupted()
+                        || (deadline != 0 && System.nanoTime() - deadline >= 0)) {
+                    return null;
+                }
+            }
+            int nonce = (int) n;
+            nonceBytes[0] = (byte) (nonce >>> 24);
+            nonceBytes[1] = (byte) (nonce >>> 16);
+            nonceBytes[2] = (byte) (nonce >>> 8);
+            nonceBytes[3] = (byte) nonce;
+            MessageDigest md = (MessageDigest) prefixState.clone();
+            md.update(nonceBytes);
+            md.digest(out, 0, out.length);
+            if (hasLeadingZeroBits(out, zeroBits)) {
+                stop.set(true);
+                return nonce;
+            }
+        }
+        return null;
+    }
+}
@@ -1,53 +1,70 @@
 package net.codejava.model;
 
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
+import net.codejava.helper.HashingCore;
+import net.codejava.helper.ProofOfWork;
+
 public class Block {
+    // hash over Arrays.toString(data) + previousBlockHash + timestamp + nonce
+    public static final int HASH_TEXT = 0;
+    // hash over the length-prefixed binary encoding in HashingCore
+    public static final int HASH_BINARY = 1;
+
     private String[] data;
     private String previousBlockHash;
     private String blockHash;
     private long timestamp;
     private int nonce;
+    private int hashVersion;
 
     public Block(String[] data, String previousBlockHash) {
         this.data = data;
         this.previousBlockHash = previousBlockHash;
         this.timestamp = System.currentTimeMillis();
         this.nonce = 0;
+        this.hashVersion = HASH_BINARY;
+        this.blockHash = calculateHash();
+    }
+
+    // Rebuilds a block from stored fields, e.g. to check a saved hash
+    public Block(String[] data, String previousBlockHash, long timestamp, int nonce, int hashVersion) {
+        this.data = data;
+        this.previousBlockHash = previousBlockHash;
+        this.timestamp = timestamp;
+        this.nonce = nonce;
+        this.hashVersion = hashVersion;
         this.blockHash = calculateHash();
     }
 
     public String calculateHash() {
-        try {
-            String dataString = Arrays.toString(data) + previousBlockHash + timestamp + nonce;
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(dataString.getBytes(StandardCharsets.UTF_8));
-            
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
+        if (hashVersion == HASH_TEXT) {
+            return HashingCore.legacyBlockHash(data, previousBlockHash, timestamp, nonce);
         }
+        return HashingCore.blockHash(data, previousBlockHash, timestamp, nonce);
     }
 
     public void mineBlock(int difficulty) {
-        String target = new String(new char[difficulty]).replace('\0', '0');
-        while (!blockHash.substring(0, difficulty).equals(target)) {
-            nonce++;
-            blockHash = calculateHash();
+        mineBlock(difficulty, 0);
+    }
+
+    /**
+     * Searches the nonce space on all cores for a hash starting with
+     * difficulty zero hex digits. Returns false and leaves the block as it
+     * was if timeoutMs (0 for none) passes first.
+     */
+    public boolean mineBlock(int difficulty, long timeoutMs) {
+        if (hashVersion != HASH_BINARY) {
+            throw new IllegalStateException("Only binary-encoded blocks can be mined");
         }
-        System.out.println("Block mined: " + blockHash);
+        HashingCore.Encoder prefix = HashingCore.encodeBlockPrefix(HashingCore.encoder(), data, previousBlockHash, timestamp);
+        Integer found = ProofOfWork.mine(Arrays.copyOf(prefix.buffer(), prefix.length()), difficulty * 4, timeoutMs);
+        if (found == null) {
+            return false;
+        }
+        nonce = found;
+        blockHash = calculateHash();
+        return true;
     }
 
     // Getters and Setters
@@ -91,6 +108,10 @@ public class Block {
         this.nonce = nonce;
     }
 
+    public int getHashVersion() {
+        return hashVersion;
+    }
+
     @Override
     public String toString() {
         return "Block{" +
@@ -99,6 +120,7 @@ public class Block {
                 ", blockHash='" + blockHash + '\'' +
                 ", timestamp=" + timestamp +
                 ", nonce=" + nonce +
+                ", hashVersion=" + hashVersion +
                 '}';
     }
 }
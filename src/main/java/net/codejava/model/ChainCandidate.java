@@ -0,0 +1,66 @@
+package net.codejava.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A candidate as the Voting contract sees it, kept current by
+ * ChainEventIndexer from the indexed chain events.
+ */
+@Document(collection = "chain_candidates")
+public class ChainCandidate {
+
+    @Id
+    private long candidateId;
+
+    private String name;
+    private String party;
+    private boolean active;
+    private long voteCount;
+
+    public long getCandidateId() {
+        return candidateId;
+    }
+
+    public void setCandidateId(long candidateId) {
+        this.candidateId = candidateId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getParty() {
+        return party;
+    }
+
+    public void setParty(String party) {
+        this.party = party;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    public long getVoteCount() {
+        return voteCount;
+    }
+
+    public void setVoteCount(long voteCount) {
+        this.voteCount = voteCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ChainCandidate [candidateId=" + candidateId + ", name=" + name + ", party=" + party + ", active=" + active
+                + ", voteCount=" + voteCount + "]";
+    }
+}
@@ -0,0 +1,70 @@
+package net.codejava.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A verified point in the votedata hash chain. The signature is an HMAC over
+ * sequence and tipHash, so a checkpoint edited in the database is rejected.
+ */
+@Document(collection = "chain_checkpoints")
+public class ChainCheckpoint {
+
+    @Id
+    private String id;
+
+    @Indexed(unique = true)
+    private long sequence;
+
+    private String tipHash;
+    private String signature;
+    private Date date;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getTipHash() {
+        return tipHash;
+    }
+
+    public void setTipHash(String tipHash) {
+        this.tipHash = tipHash;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public void setSignature(String signature) {
+        this.signature = signature;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    @Override
+    public String toString() {
+        return "ChainCheckpoint [sequence=" + sequence + ", tipHash=" + tipHash + ", date=" + date + "]";
+    }
+}
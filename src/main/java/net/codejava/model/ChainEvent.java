@@ -0,0 +1,134 @@
+package net.codejava.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A Voting contract log picked up by ChainEventIndexer. The id is
+ * txHash:logIndex, so indexing the same block range twice stores each log
+ * once.
+ */
+@Document(collection = "chain_events")
+public class ChainEvent {
+
+    // type values, one per contract event that is indexed
+    public static final String CANDIDATE_ADDED = "CandidateAdded";
+    public static final String CANDIDATE_REMOVED = "CandidateRemoved";
+    public static final String VOTED = "VotedEvent";
+    public static final String COMMITMENT_VOTED = "CommitmentVoted";
+
+    @Id
+    private String id;
+
+    private String type;
+
+    @Indexed
+    private long blockNumber;
+
+    private String blockHash;
+
+    @Indexed
+    private String txHash;
+
+    private long logIndex;
+    private long candidateId;
+    private String name;
+    private String party;
+    private String voter; // voter address for VotedEvent, commitment for CommitmentVoted
+    private Boolean applied; // false until counted into chain_candidates; absent on older events, which were
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public long getBlockNumber() {
+        return blockNumber;
+    }
+
+    public void setBlockNumber(long blockNumber) {
+        this.blockNumber = blockNumber;
+    }
+
+    public String getBlockHash() {
+        return blockHash;
+    }
+
+    public void setBlockHash(String blockHash) {
+        this.blockHash = blockHash;
+    }
+
+    public String getTxHash() {
+        return txHash;
+    }
+
+    public void setTxHash(String txHash) {
+        this.txHash = txHash;
+    }
+
+    public long getLogIndex() {
+        return logIndex;
+    }
+
+    public void setLogIndex(long logIndex) {
+        this.logIndex = logIndex;
+    }
+
+    public long getCandidateId() {
+        return candidateId;
+    }
+
+    public void setCandidateId(long candidateId) {
+        this.candidateId = candidateId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getParty() {
+        return party;
+    }
+
+    public void setParty(String party) {
+        this.party = party;
+    }
+
+    public String getVoter() {
+        return voter;
+    }
+
+    public void setVoter(String voter) {
+        this.voter = voter;
+    }
+
+    public Boolean getApplied() {
+        return applied;
+    }
+
+    public void setApplied(Boolean applied) {
+        this.applied = applied;
+    }
+
+    @Override
+    public String toString() {
+        return "ChainEvent [type=" + type + ", blockNumber=" + blockNumber + ", txHash=" + txHash + ", logIndex=" + logIndex
+                + ", candidateId=" + candidateId + "]";
+    }
+}
@@ -0,0 +1,59 @@
+package net.codejava.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * How far ChainEventIndexer has read the chain. blockHash is the hash of
+ * lastBlock when it was indexed; if the chain later reports a different hash
+ * for that height, a reorg happened.
+ */
+@Document(collection = "chain_index_checkpoints")
+public class ChainIndexCheckpoint {
+
+    @Id
+    private String id;
+
+    private long lastBlock;
+    private String blockHash;
+    private Date date;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getLastBlock() {
+        return lastBlock;
+    }
+
+    public void setLastBlock(long lastBlock) {
+        this.lastBlock = lastBlock;
+    }
+
+    public String getBlockHash() {
+        return blockHash;
+    }
+
+    public void setBlockHash(String blockHash) {
+        this.blockHash = blockHash;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    @Override
+    public String toString() {
+        return "ChainIndexCheckpoint [id=" + id + ", lastBlock=" + lastBlock + ", blockHash=" + blockHash + ", date=" + date + "]";
+    }
+}
@@ -0,0 +1,109 @@
+package net.codejava.model;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A sealed group of consecutive votes. merkleRoot commits to the votes'
+ * currhash values and batchHash links this batch to the previous one, so
+ * the batch hashes form their own chain.
+ */
+@Document(collection = "vote_batches")
+public class VoteBatch {
+
+    @Id
+    private String id;
+
+    @Indexed(unique = true)
+    private long batchNumber;
+
+    private String merkleRoot;
+    private String prevBatchHash;
+    private String batchHash;
+    private long firstSequence;
+    private long lastSequence;
+    private List<String> leaves;
+    private Date date;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getBatchNumber() {
+        return batchNumber;
+    }
+
+    public void setBatchNumber(long batchNumber) {
+        this.batchNumber = batchNumber;
+    }
+
+    public String getMerkleRoot() {
+        return merkleRoot;
+    }
+
+    public void setMerkleRoot(String merkleRoot) {
+        this.merkleRoot = merkleRoot;
+    }
+
+    public String getPrevBatchHash() {
+        return prevBatchHash;
+    }
+
+    public void setPrevBatchHash(String prevBatchHash) {
+        this.prevBatchHash = prevBatchHash;
+    }
+
+    public String getBatchHash() {
+        return batchHash;
+    }
+
+    public void setBatchHash(String batchHash) {
+        this.batchHash = batchHash;
+    }
+
+    public long getFirstSequence() {
+        return firstSequence;
+    }
+
+    public void setFirstSequence(long firstSequence) {
+        this.firstSequence = firstSequence;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public void setLastSequence(long lastSequence) {
+        this.lastSequence = lastSequence;
+    }
+
+    public List<String> getLeaves() {
+        return leaves;
+    }
+
+    public void setLeaves(List<String> leaves) {
+        this.leaves = leaves;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    @Override
+    public String toString() {
+        return "VoteBatch [batchNumber=" + batchNumber + ", merkleRoot=" + merkleRoot + ", batchHash=" + batchHash
+                + ", firstSequence=" + firstSequence + ", lastSequence=" + lastSequence + "]";
+    }
+}
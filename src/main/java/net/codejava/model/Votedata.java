@@ -2,11 +2,21 @@ package net.codejava.model;
 
 import java.util.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "votedata")
 public class Votedata {
 
+    // chainStatus values, tracked while the vote travels through the pipeline;
+    // PENDING and DEFERRED votes are the outbox VoteOutboxRelay sends from
+    public static final String CHAIN_PENDING = "PENDING";
+    public static final String CHAIN_SUBMITTED = "SUBMITTED";
+    public static final String CHAIN_CONFIRMED = "CONFIRMED";
+    public static final String CHAIN_FAILED = "FAILED";
+    // held back while the chain circuit is open, submitted once the node recovers
+    public static final String CHAIN_DEFERRED = "DEFERRED";
+
     @Id
     private String id;
     
@@ -14,7 +24,33 @@ public class Votedata {
     private String candidate;
     private String prevhash;
     private String currhash;
+    @Indexed(unique = true, sparse = true)
+    private String receipt; // voter-facing token, issued by VoteReceiptService
+    // unique among sequenced votes, see VoteBatchWriter.ensureIndexes
+    private long sequence; // position in the hash chain, assigned by ChainHeadSequencer
+    // block inputs besides username/candidate, kept so currhash can be recomputed by the audit
+    private String voterName;
+    private long blockTimestamp;
+    private int nonce;
+    private int hashVersion; // Block.HASH_TEXT for votes hashed before the binary encoding
     private Date date;
+    private String txhash;
+    @Indexed
+    private String chainStatus;
+    // outbox bookkeeping, written with the vote itself so both land atomically
+    private String chainKey; // idempotency key, the voter commitment voteBatch records on-chain; null without batching
+    private int chainAttempts;
+    private Date nextChainAttempt;
+    private Date chainLeaseUntil; // a SUBMITTED vote is sent again once this passes
+    private Long batchNumber; // Merkle batch this vote was sealed into, null until sealed
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
 
     public String getUsername() {
         return username;
@@ -40,6 +76,46 @@ public class Votedata {
         this.currhash = currhash;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getVoterName() {
+        return voterName;
+    }
+
+    public void setVoterName(String voterName) {
+        this.voterName = voterName;
+    }
+
+    public long getBlockTimestamp() {
+        return blockTimestamp;
+    }
+
+    public void setBlockTimestamp(long blockTimestamp) {
+        this.blockTimestamp = blockTimestamp;
+    }
+
+    public int getNonce() {
+        return nonce;
+    }
+
+    public void setNonce(int nonce) {
+        this.nonce = nonce;
+    }
+
+    public int getHashVersion() {
+        return hashVersion;
+    }
+
+    public void setHashVersion(int hashVersion) {
+        this.hashVersion = hashVersion;
+    }
+
     public Date getDate() {
         return date;
     }
@@ -48,6 +124,14 @@ public class Votedata {
         this.date = date;
     }
 
+    public String getReceipt() {
+        return receipt;
+    }
+
+    public void setReceipt(String receipt) {
+        this.receipt = receipt;
+    }
+
     public String getCandidate() {
         return candidate;
     }
@@ -56,9 +140,65 @@ public class Votedata {
         this.candidate = candidate;
     }
 
+    public String getTxhash() {
+        return txhash;
+    }
+
+    public void setTxhash(String txhash) {
+        this.txhash = txhash;
+    }
+
+    public String getChainStatus() {
+        return chainStatus;
+    }
+
+    public void setChainStatus(String chainStatus) {
+        this.chainStatus = chainStatus;
+    }
+
+    public String getChainKey() {
+        return chainKey;
+    }
+
+    public void setChainKey(String chainKey) {
+        this.chainKey = chainKey;
+    }
+
+    public int getChainAttempts() {
+        return chainAttempts;
+    }
+
+    public void setChainAttempts(int chainAttempts) {
+        this.chainAttempts = chainAttempts;
+    }
+
+    public Date getNextChainAttempt() {
+        return nextChainAttempt;
+    }
+
+    public void setNextChainAttempt(Date nextChainAttempt) {
+        this.nextChainAttempt = nextChainAttempt;
+    }
+
+    public Date getChainLeaseUntil() {
+        return chainLeaseUntil;
+    }
+
+    public void setChainLeaseUntil(Date chainLeaseUntil) {
+        this.chainLeaseUntil = chainLeaseUntil;
+    }
+
+    public Long getBatchNumber() {
+        return batchNumber;
+    }
+
+    public void setBatchNumber(Long batchNumber) {
+        this.batchNumber = batchNumber;
+    }
+
     @Override
     public String toString() {
-        return "Votedata [id=" + id + ", username=" + username + ", candidate=" + candidate + ", currhash=" + currhash + ", prevhash=" + prevhash + ", date=" + date + "]";
+        return "Votedata [id=" + id + ", username=" + username + ", candidate=" + candidate + ", currhash=" + currhash + ", prevhash=" + prevhash + ", sequence=" + sequence + ", date=" + date + ", txhash=" + txhash + ", chainStatus=" + chainStatus + "]";
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package net.codejava.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import net.codejava.model.ChainCheckpoint;
+
+public interface ChainCheckpointRepo extends MongoRepository<ChainCheckpoint, String> {
+
+	@Query(value = "{}", sort = "{'sequence': -1}")
+	public ChainCheckpoint findTopByOrderBySequenceDesc();
+
+}
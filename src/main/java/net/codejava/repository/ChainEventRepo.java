@@ -0,0 +1,17 @@
+package net.codejava.repository;
+
+import java.util.List;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import net.codejava.model.ChainEvent;
+
+public interface ChainEventRepo extends MongoRepository<ChainEvent, String> {
+
+	public List<ChainEvent> findByTxHash(String txHash);
+
+	public List<ChainEvent> findByTypeInOrderByBlockNumberAscLogIndexAsc(List<String> types);
+
+	public void deleteByBlockNumberGreaterThan(long blockNumber);
+
+}
@@ -0,0 +1,9 @@
+package net.codejava.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import net.codejava.model.ChainIndexCheckpoint;
+
+public interface ChainIndexCheckpointRepo extends MongoRepository<ChainIndexCheckpoint, String> {
+
+}
@@ -0,0 +1,15 @@
+package net.codejava.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import net.codejava.model.VoteBatch;
+
+public interface VoteBatchRepo extends MongoRepository<VoteBatch, String> {
+
+	public VoteBatch findByBatchNumber(long batchNumber);
+
+	@Query(value = "{}", sort = "{'batchNumber': -1}")
+	public VoteBatch findTopByOrderByBatchNumberDesc();
+
+}
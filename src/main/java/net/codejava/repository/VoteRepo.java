@@ -1,7 +1,9 @@
 package net.codejava.repository;
 
 import java.util.Date;
+import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -16,6 +18,9 @@ public interface VoteRepo extends MongoRepository<Votedata, String> {
 	@Query(value = "{}", sort = "{'date': -1}")
 	public Votedata findTopByOrderByDateDesc();
 
+	@Query(value = "{'sequence': {$gt: 0}}", sort = "{'sequence': -1}")
+	public Votedata findTopByOrderBySequenceDesc();
+
 	// Note: MongoDB doesn't support native queries like SQL
 	// These methods will need to be implemented differently
 	// For now, we'll comment them out
@@ -29,4 +34,8 @@ public interface VoteRepo extends MongoRepository<Votedata, String> {
 
 	public Votedata findByCurrhash(String currhash);
 
+	public Votedata findByReceipt(String receipt);
+
+	public List<Votedata> findBySequenceGreaterThanOrderBySequenceAsc(long sequence, Pageable pageable);
+
 }
@@ -5,12 +5,8 @@ import org.springframework.stereotype.Service;
 import io.reactivex.disposables.Disposable;
 import java.math.BigInteger;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
-import org.web3j.crypto.Credentials;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
-import org.web3j.tx.RawTransactionManager;
 import org.web3j.tx.TransactionManager;
-import org.web3j.tx.gas.DefaultGasProvider;
 import org.web3j.abi.datatypes.Function;
 import org.web3j.abi.FunctionEncoder;
 import org.web3j.abi.TypeReference;
@@ -18,43 +14,75 @@ import org.web3j.abi.datatypes.Type;
 import org.web3j.abi.datatypes.Utf8String;
 import org.web3j.abi.datatypes.generated.Uint256;
 import org.web3j.abi.datatypes.Bool;
-import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
 import org.web3j.protocol.core.methods.request.Transaction;
 import org.web3j.protocol.core.methods.response.EthCall;
 
+import net.codejava.model.ChainCandidate;
+import net.codejava.smartcontract.ChainCircuitBreaker;
+import net.codejava.smartcontract.ChainReadCache;
+import net.codejava.smartcontract.GasOracle;
+import net.codejava.smartcontract.ReceiptTracker;
+import net.codejava.smartcontract.RpcClient;
+import net.codejava.smartcontract.SharedTransactionManager;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.PostConstruct;
 
 @Service
 public class BlockchainService {
     private final Web3j web3j;
     private final String contractAddress;
-    private final Credentials credentials;
     private final TransactionManager transactionManager;
+    private final ReceiptTracker receiptTracker;
+    private final ChainCircuitBreaker circuitBreaker;
+    private final ChainReadCache chainReadCache;
+    private final CandidateChainIdCache candidateChainIdCache;
     private final ObjectMapper objectMapper;
-    private final DefaultGasProvider gasProvider;
-
-    public BlockchainService(
-            @Value("${AVALANCHE_RPC_URL}") String rpcUrl,
-            @Value("${TEST_PRIVATE_KEY}") String privateKey) {
-        this.web3j = Web3j.build(new HttpService(rpcUrl));
-        this.credentials = Credentials.create(privateKey);
-        // Use chainId 43113 for Avalanche Fuji testnet with EIP-155
-        this.transactionManager = new RawTransactionManager(
-            web3j, 
-            credentials,
-            43113, // Avalanche Fuji testnet chainId
-            5,     // Attempt to retry failed transactions 5 times
-            3000   // 3 second delay between retries
-        );
+    private final GasOracle gasOracle;
+
+    // last bulk candidate read, valid for its block only
+    private volatile CandidateSnapshot candidateSnapshot;
+
+    public BlockchainService(RpcClient rpcClient, SharedTransactionManager transactionManager,
+            ReceiptTracker receiptTracker, ChainCircuitBreaker circuitBreaker, ChainReadCache chainReadCache,
+            CandidateChainIdCache candidateChainIdCache, GasOracle gasOracle,
+            @Value("${CONTRACT_ADDRESS}") String configuredAddress) {
+        this.web3j = rpcClient.getWeb3j();
+        // same manager as VotingContractService, so both draw from one nonce sequence
+        this.transactionManager = transactionManager;
+        this.receiptTracker = receiptTracker;
+        this.circuitBreaker = circuitBreaker;
+        this.chainReadCache = chainReadCache;
+        this.candidateChainIdCache = candidateChainIdCache;
         this.objectMapper = new ObjectMapper();
-        this.gasProvider = new DefaultGasProvider();
+        this.gasOracle = gasOracle;
 
-        // Read contract address and ABI from fuji.json
+        // Read contract address and ABI from fuji.json, the configured
+        // address stands in where there is no deployment (local chain, CI)
+        if (!Files.exists(Paths.get("deployments/fuji.json"))) {
+            this.contractAddress = configuredAddress;
+            return;
+        }
         try {
             String jsonContent = new String(Files.readAllBytes(Paths.get("deployments/fuji.json")));
             JsonNode root = objectMapper.readTree(jsonContent);
@@ -64,53 +92,72 @@ public class BlockchainService {
         }
     }
 
-    public TransactionReceipt addCandidate(String name, String party, String imageHash) {
+    /**
+     * Seeds the candidate id cache with one bulk read when chain_candidates
+     * had nothing, so votes for an existing contract don't wait for the
+     * indexer to scan it from its first block.
+     */
+    @PostConstruct
+    public void seedCandidateIds() {
+        if (!candidateChainIdCache.isEmpty()) {
+            return;
+        }
         try {
-            Function function = new Function(
-                "addCandidate", 
-                Arrays.asList(
-                    new Utf8String(name),
-                    new Utf8String(party),
-                    new Utf8String(imageHash)
-                ),
-                Collections.emptyList()
-            );
-
-            String encodedFunction = FunctionEncoder.encode(function);
-            org.web3j.protocol.core.methods.response.EthSendTransaction transaction = transactionManager.sendTransaction(
-                gasProvider.getGasPrice(),
-                gasProvider.getGasLimit(),
-                contractAddress,
-                encodedFunction,
-                BigInteger.ZERO
-            );
-            String txHash = transaction.getTransactionHash();
-            return web3j.ethGetTransactionReceipt(txHash).send().getTransactionReceipt().get();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to add candidate to blockchain", e);
+            CandidateSnapshot snapshot = getAllCandidates();
+            candidateChainIdCache.seed(snapshot.getBlockNumber(), snapshot.getCandidates());
+            System.out.println("[INIT] Candidate id cache seeded with " + snapshot.getCandidates().size()
+                + " on-chain candidates at block " + snapshot.getBlockNumber());
+        } catch (RuntimeException e) {
+            // the indexer fills the cache in the meantime, votes wait for it
+            System.err.println("[INIT] Could not seed candidate ids from the chain: " + e.getMessage());
         }
     }
 
-    public TransactionReceipt vote(BigInteger candidateId) {
-        try {
-            Function function = new Function(
-                "vote",
-                Arrays.asList(new Uint256(candidateId)),
-                Collections.emptyList()
-            );
+    public CompletableFuture<TransactionReceipt> addCandidate(String name, String party, String imageHash) {
+        Function function = new Function(
+            "addCandidate", 
+            Arrays.asList(
+                new Utf8String(name),
+                new Utf8String(party),
+                new Utf8String(imageHash)
+            ),
+            Collections.emptyList()
+        );
+        // votes can use the new id as soon as it is mined
+        return submit(function, "Failed to add candidate to blockchain").thenApply(receipt -> {
+            candidateChainIdCache.applyReceipt(receipt);
+            return receipt;
+        });
+    }
 
-            String encodedFunction = FunctionEncoder.encode(function);
-            org.web3j.protocol.core.methods.response.EthSendTransaction transaction = transactionManager.sendTransaction(
-                gasProvider.getGasPrice(),
-                gasProvider.getGasLimit(),
-                contractAddress,
-                encodedFunction,
-                BigInteger.ZERO
+    public CompletableFuture<TransactionReceipt> vote(BigInteger candidateId) {
+        Function function = new Function(
+            "vote",
+            Arrays.asList(new Uint256(candidateId)),
+            Collections.emptyList()
+        );
+        return submit(function, "Failed to record vote on blockchain");
+    }
+
+    // sends without waiting; the receipt tracker completes the future once mined
+    private CompletableFuture<TransactionReceipt> submit(Function function, String failure) {
+        String data = FunctionEncoder.encode(function);
+        try {
+            org.web3j.protocol.core.methods.response.EthSendTransaction transaction = circuitBreaker.call(() ->
+                transactionManager.sendTransaction(
+                    gasOracle.gasPrice(),
+                    gasOracle.gasLimit(transactionManager.getFromAddress(), contractAddress, data),
+                    contractAddress,
+                    data,
+                    BigInteger.ZERO
+                )
             );
-            String txHash = transaction.getTransactionHash();
-            return web3j.ethGetTransactionReceipt(txHash).send().getTransactionReceipt().get();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to record vote on blockchain", e);
+            if (transaction.hasError()) {
+                throw new RuntimeException(failure + ": " + transaction.getError().getMessage());
+            }
+            return receiptTracker.track(transaction.getTransactionHash());
+        } catch (IOException e) {
+            throw new RuntimeException(failure, e);
         }
     }
 
@@ -122,17 +169,10 @@ public class BlockchainService {
                 Arrays.asList(new TypeReference<Bool>() {})
             );
 
-            String encodedFunction = FunctionEncoder.encode(function);
-            EthCall ethCall = web3j.ethCall(
-                Transaction.createEthCallTransaction(
-                    credentials.getAddress(),
-                    contractAddress,
-                    encodedFunction
-                ),
-                DefaultBlockParameterName.LATEST
-            ).send();
-
-            return Boolean.parseBoolean(ethCall.getValue());
+            // shared with any other check of this voter in the same block
+            String value = chainReadCache.call(contractAddress, FunctionEncoder.encode(function));
+            List<Type> values = FunctionReturnDecoder.decode(value, function.getOutputParameters());
+            return !values.isEmpty() && (Boolean) values.get(0).getValue();
         } catch (Exception e) {
             throw new RuntimeException("Failed to check voter status on blockchain", e);
         }
@@ -146,19 +186,161 @@ public class BlockchainService {
                 Arrays.asList(new TypeReference<Uint256>() {})
             );
 
-            String encodedFunction = FunctionEncoder.encode(function);
-            EthCall ethCall = web3j.ethCall(
-                Transaction.createEthCallTransaction(
-                    credentials.getAddress(),
-                    contractAddress,
-                    encodedFunction
-                ),
-                DefaultBlockParameterName.LATEST
-            ).send();
+            String value = chainReadCache.call(contractAddress, FunctionEncoder.encode(function));
 
-            return new BigInteger(ethCall.getValue().substring(2), 16);
+            return new BigInteger(value.substring(2), 16);
         } catch (Exception e) {
             throw new RuntimeException("Failed to get vote count from blockchain", e);
         }
     }
+
+    /**
+     * Every candidate with its vote count, read at one block. The calls go
+     * out as a single JSON-RPC batch pinned to the current block, and the
+     * result is reused until a new block arrives; concurrent callers share
+     * one read.
+     */
+    public CandidateSnapshot getAllCandidates() {
+        try {
+            return chainReadCache.get("getAllCandidates", this::readAllCandidates);
+        } catch (ChainCircuitBreaker.OpenException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read candidates from blockchain", e);
+        }
+    }
+
+    private CandidateSnapshot readAllCandidates(long blockNumber) throws IOException {
+        CandidateSnapshot snapshot = candidateSnapshot;
+        if (snapshot != null && snapshot.getBlockNumber() == blockNumber) {
+            return snapshot;
+        }
+        DefaultBlockParameter block = DefaultBlockParameter.valueOf(BigInteger.valueOf(blockNumber));
+
+        // the count rides along in the same batch; guess from the last read
+        // and fetch any candidates beyond the guess in a second batch
+        int known = snapshot == null ? 0 : snapshot.getCandidates().size();
+        Function countFunction = new Function("candidatesCount", Collections.emptyList(),
+            Arrays.asList(new TypeReference<Uint256>() {}));
+        Request<?, EthCall> countCall = ethCall(countFunction, block);
+        BatchRequest batch = web3j.newBatch();
+        batch.add(countCall);
+        Map<Integer, Request<?, EthCall>> candidateCalls = addGetCandidateCalls(batch, 1, known, block);
+        // the node may answer a batch in any order, so responses are matched to requests by id
+        Map<Long, Response<?>> responses = byId(batch.send());
+
+        int count = ((Uint256) decode(responseTo(countCall, responses), countFunction).get(0)).getValue().intValue();
+        Map<Long, ChainCandidate> candidates = new TreeMap<>();
+        for (Map.Entry<Integer, Request<?, EthCall>> call : candidateCalls.entrySet()) {
+            addDecoded(candidates, call.getKey(), count, responseTo(call.getValue(), responses));
+        }
+        if (count > known) {
+            BatchRequest rest = web3j.newBatch();
+            Map<Integer, Request<?, EthCall>> restCalls = addGetCandidateCalls(rest, known + 1, count, block);
+            Map<Long, Response<?>> restResponses = byId(rest.send());
+            for (Map.Entry<Integer, Request<?, EthCall>> call : restCalls.entrySet()) {
+                addDecoded(candidates, call.getKey(), count, responseTo(call.getValue(), restResponses));
+            }
+        }
+        // a guess beyond the count finds nothing real, an empty slot decodes as id 0
+        candidates.keySet().removeIf(id -> id < 1 || id > count);
+        snapshot = new CandidateSnapshot(blockNumber, Collections.unmodifiableList(new ArrayList<>(candidates.values())));
+        candidateSnapshot = snapshot;
+        return snapshot;
+    }
+
+    // keyed by the candidate id asked for
+    private Map<Integer, Request<?, EthCall>> addGetCandidateCalls(BatchRequest batch, int from, int to, DefaultBlockParameter block) {
+        Map<Integer, Request<?, EthCall>> calls = new LinkedHashMap<>();
+        for (int id = from; id <= to; id++) {
+            Request<?, EthCall> call = ethCall(getCandidateFunction(id), block);
+            batch.add(call);
+            calls.put(id, call);
+        }
+        return calls;
+    }
+
+    private static Map<Long, Response<?>> byId(BatchResponse batch) {
+        Map<Long, Response<?>> responses = new HashMap<>();
+        for (Response<?> response : batch.getResponses()) {
+            responses.put(response.getId(), response);
+        }
+        return responses;
+    }
+
+    private static EthCall responseTo(Request<?, EthCall> request, Map<Long, Response<?>> responses) throws IOException {
+        Response<?> response = responses.get(request.getId());
+        if (response == null) {
+            throw new IOException("No response to batched " + request.getMethod() + " " + request.getId());
+        }
+        return (EthCall) response;
+    }
+
+    // keyed by the decoded candidate id; only a guess beyond the count may fail
+    private void addDecoded(Map<Long, ChainCandidate> candidates, int requestedId, int count, EthCall call)
+            throws IOException {
+        if (call.hasError() || call.isReverted()) {
+            if (requestedId > count) {
+                return;
+            }
+            String reason = call.hasError() ? call.getError().getMessage() : call.getRevertReason();
+            throw new ChainCircuitBreaker.NodeReplyException("getCandidate(" + requestedId + ") failed: " + reason);
+        }
+        List<Type> values = decode(call, getCandidateFunction(0));
+        ChainCandidate candidate = new ChainCandidate();
+        candidate.setCandidateId(((Uint256) values.get(0)).getValue().longValue());
+        candidate.setName((String) values.get(1).getValue());
+        candidate.setParty((String) values.get(2).getValue());
+        candidate.setVoteCount(((Uint256) values.get(4)).getValue().longValue());
+        candidate.setActive((Boolean) values.get(5).getValue());
+        candidates.put(candidate.getCandidateId(), candidate);
+    }
+
+    private static Function getCandidateFunction(long candidateId) {
+        return new Function(
+            "getCandidate",
+            Arrays.asList(new Uint256(candidateId)),
+            Arrays.asList(
+                new TypeReference<Uint256>() {},
+                new TypeReference<Utf8String>() {},
+                new TypeReference<Utf8String>() {},
+                new TypeReference<Utf8String>() {},
+                new TypeReference<Uint256>() {},
+                new TypeReference<Bool>() {}
+            )
+        );
+    }
+
+    private Request<?, EthCall> ethCall(Function function, DefaultBlockParameter block) {
+        return web3j.ethCall(
+            Transaction.createEthCallTransaction(
+                transactionManager.getFromAddress(),
+                contractAddress,
+                FunctionEncoder.encode(function)
+            ),
+            block
+        );
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static List<Type> decode(EthCall call, Function function) {
+        if (call.hasError()) {
+            throw new IllegalStateException(function.getName() + " failed: " + call.getError().getMessage());
+        }
+        return FunctionReturnDecoder.decode(call.getValue(), function.getOutputParameters());
+    }
+
+    public static class CandidateSnapshot {
+        private final long blockNumber;
+        private final List<ChainCandidate> candidates;
+
+        CandidateSnapshot(long blockNumber, List<ChainCandidate> candidates) {
+            this.blockNumber = blockNumber;
+            this.candidates = candidates;
+        }
+
+        // Getters
+        public long getBlockNumber() { return blockNumber; }
+        public List<ChainCandidate> getCandidates() { return candidates; }
+    }
 }
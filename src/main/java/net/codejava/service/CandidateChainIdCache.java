@@ -0,0 +1,199 @@
+package net.codejava.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.utils.Numeric;
+
+import net.codejava.model.ChainCandidate;
+import net.codejava.repository.ChainCandidateRepo;
+
+/**
+ * Maps a candidate's party, which is what a vote records, to its on-chain
+ * candidate id. Reads are a plain lookup in an immutable map behind a
+ * volatile reference; every change copies the map under a lock and bumps the
+ * version.
+ *
+ * Filled from chain_candidates at startup, from addCandidate receipts as soon
+ * as they are mined, and from CandidateAdded/CandidateRemoved events as the
+ * indexer sees them. A party whose candidate was removed has no id.
+ *
+ * When chain_candidates is empty, e.g. the indexer has yet to scan an
+ * existing contract, the cache is seeded from one bulk candidate read. The
+ * seed answers for parties the indexer hasn't reached yet and is dropped
+ * once the indexer is past the block it was read at.
+ */
+@Service
+public class CandidateChainIdCache {
+
+    private static final String CANDIDATE_ADDED_TOPIC = EventEncoder.encode(ChainEventIndexer.CANDIDATE_ADDED);
+
+    @Autowired
+    private ChainCandidateRepo chainCandidateRepo;
+
+    private volatile Mapping mapping = new Mapping(0, Collections.<String, Long>emptyMap());
+    private volatile Seed seed;
+
+    @PostConstruct
+    public void load() {
+        try {
+            reload();
+            System.out.println("[INIT] Candidate id cache loaded with " + mapping.ids.size() + " on-chain candidates");
+        } catch (Exception e) {
+            System.err.println("[ERROR] Could not load on-chain candidate ids: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The on-chain id of the active candidate for this party, or null if
+     * there is none.
+     */
+    public Long resolve(String party) {
+        Long id = mapping.ids.get(party);
+        if (id != null) {
+            return id;
+        }
+        Seed current = seed;
+        return current == null ? null : current.ids.get(party);
+    }
+
+    public long getVersion() {
+        return mapping.version;
+    }
+
+    public boolean isEmpty() {
+        return mapping.ids.isEmpty() && seed == null;
+    }
+
+    public Map<String, Object> getStats() {
+        Mapping current = mapping;
+        Seed currentSeed = seed;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("version", current.version);
+        stats.put("candidates", current.ids);
+        stats.put("seedBlock", currentSeed == null ? null : currentSeed.blockNumber);
+        return stats;
+    }
+
+    /**
+     * Seeds the ids of the active candidates from a bulk read at this block.
+     */
+    public synchronized void seed(long blockNumber, List<ChainCandidate> candidates) {
+        Map<String, Long> ids = new HashMap<>();
+        for (ChainCandidate candidate : candidates) {
+            if (candidate.isActive() && candidate.getParty() != null) {
+                ids.put(candidate.getParty(), candidate.getCandidateId());
+            }
+        }
+        seed = new Seed(blockNumber, Collections.unmodifiableMap(ids));
+    }
+
+    /**
+     * Called as the indexer checkpoints; the seed goes once the indexed
+     * events cover its block.
+     */
+    public synchronized void indexedThrough(long block) {
+        if (seed != null && block >= seed.blockNumber) {
+            seed = null;
+            System.out.println("[BLOCKCHAIN] Indexer reached block " + block + ", candidate id seed dropped");
+        }
+    }
+
+    public synchronized void candidateAdded(long candidateId, String party) {
+        Map<String, Long> ids = new HashMap<>(mapping.ids);
+        ids.put(party, candidateId);
+        publish(ids);
+    }
+
+    public synchronized void candidateRemoved(long candidateId) {
+        Map<String, Long> ids = new HashMap<>(mapping.ids);
+        if (ids.values().remove(candidateId)) {
+            publish(ids);
+        }
+        if (seed != null && seed.ids.containsValue(candidateId)) {
+            Map<String, Long> seeded = new HashMap<>(seed.ids);
+            seeded.values().remove(candidateId);
+            seed = new Seed(seed.blockNumber, Collections.unmodifiableMap(seeded));
+        }
+    }
+
+    /**
+     * Rebuilds the map from chain_candidates, after the indexer rewrote it.
+     */
+    public synchronized void reload() {
+        List<ChainCandidate> candidates = chainCandidateRepo.findAll();
+        // in id order, so a party added again maps to its latest candidate
+        candidates.sort((a, b) -> Long.compare(a.getCandidateId(), b.getCandidateId()));
+        Map<String, Long> ids = new HashMap<>();
+        for (ChainCandidate candidate : candidates) {
+            if (candidate.isActive() && candidate.getParty() != null) {
+                ids.put(candidate.getParty(), candidate.getCandidateId());
+            }
+        }
+        publish(ids);
+    }
+
+    /**
+     * Takes the new candidate from a mined addCandidate receipt, so votes can
+     * use it before the indexer reaches that block.
+     */
+    public void applyReceipt(TransactionReceipt receipt) {
+        if (receipt == null || !receipt.isStatusOK()) {
+            return;
+        }
+        for (Log log : receipt.getLogs()) {
+            List<String> topics = log.getTopics();
+            if (topics.size() > 1 && CANDIDATE_ADDED_TOPIC.equalsIgnoreCase(topics.get(0))) {
+                @SuppressWarnings("rawtypes")
+                List<Type> values = FunctionReturnDecoder.decode(log.getData(),
+                        ChainEventIndexer.CANDIDATE_ADDED.getNonIndexedParameters());
+                candidateAdded(Numeric.toBigInt(topics.get(1)).longValue(), (String) values.get(1).getValue());
+            }
+        }
+    }
+
+    private void publish(Map<String, Long> ids) {
+        mapping = new Mapping(mapping.version + 1, Collections.unmodifiableMap(ids));
+    }
+
+    /**
+     * Thrown when a vote's party has no on-chain id yet. The vote waits
+     * without using up an attempt, like a call refused by the open breaker.
+     */
+    public static class UnresolvedException extends IllegalStateException {
+        public UnresolvedException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Seed {
+        final long blockNumber;
+        final Map<String, Long> ids;
+
+        Seed(long blockNumber, Map<String, Long> ids) {
+            this.blockNumber = blockNumber;
+            this.ids = ids;
+        }
+    }
+
+    private static class Mapping {
+        final long version;
+        final Map<String, Long> ids;
+
+        Mapping(long version, Map<String, Long> ids) {
+            this.version = version;
+            this.ids = ids;
+        }
+    }
+}
@@ -4,6 +4,11 @@ import java.util.*;
 
 import org.apache.tomcat.util.http.fileupload.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import net.codejava.model.Candidate;
 import net.codejava.repository.CandidateRepo;
@@ -13,6 +18,9 @@ public class CandidateService {
     
     @Autowired
     CandidateRepo candidateRepo;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
     
     public List<Candidate> getAllCandidates() {
 
@@ -40,4 +48,47 @@ public class CandidateService {
         }
         return status;
     }
+
+    /**
+     * Applies the aggregated deltas of a vote batch, one $inc per candidate,
+     * in a single bulk write, so concurrent votes never overwrite each
+     * other's counts.
+     */
+    public void incrementVoteCounts(Map<String, Integer> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Candidate.class);
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            ops.updateOne(
+                Query.query(Criteria.where("party").is(delta.getKey())),
+                new Update().inc("voteCount", delta.getValue()));
+        }
+        ops.execute();
+    }
+
+    /**
+     * Overwrites every candidate's vote count with the given counts, 0 for
+     * parties not in them. Only safe while no $inc is running alongside.
+     */
+    public void setVoteCounts(Map<String, Long> counts) {
+        mongoTemplate.updateMulti(
+            Query.query(Criteria.where("party").nin(counts.keySet())),
+            new Update().set("voteCount", 0),
+            Candidate.class);
+        if (counts.isEmpty()) {
+            return;
+        }
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Candidate.class);
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            ops.updateOne(
+                Query.query(Criteria.where("party").is(count.getKey())),
+                new Update().set("voteCount", count.getValue().intValue()));
+        }
+        ops.execute();
+    }
+
+    public void resetVoteCounts() {
+        mongoTemplate.updateMulti(new Query(), new Update().set("voteCount", 0), Candidate.class);
+    }
 }
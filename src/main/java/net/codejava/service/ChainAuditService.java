@@ -0,0 +1,326 @@
+package net.codejava.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import net.codejava.model.Block;
+import net.codejava.model.Votedata;
+
+/**
+ * Full integrity audit of the votedata hash chain. Votes are streamed from
+ * Mongo in chain order and cut into segments; each segment is re-hashed
+ * on a fork-join pool, splitting further down to a small threshold, and the
+ * prevhash links are checked wherever two pieces are joined back together.
+ * Only a bounded number of segments is held in memory at any time.
+ *
+ * Chain order is the votes written before sequencing, by date, followed by
+ * the sequenced votes. An audit runs in the background; one at a time.
+ */
+@Service
+public class ChainAuditService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${vote.audit.segment-size:10000}")
+    private int segmentSize;
+
+    @Value("${vote.audit.parallelism:0}")
+    private int parallelism;
+
+    // votes per fork-join leaf task
+    private static final int SPLIT_THRESHOLD = 1024;
+
+    private ForkJoinPool pool;
+    private ExecutorService runner;
+
+    // the running or last audit, guarded by this
+    private Date auditStartedAt;
+    private boolean auditRunning;
+    private AuditReport lastReport;
+    private String lastError;
+
+    @PostConstruct
+    public void start() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+        runner = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "chain-audit");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        runner.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    /**
+     * Starts an audit in the background unless one is already running, and
+     * returns the status either way.
+     */
+    public synchronized Map<String, Object> startAudit() {
+        if (!auditRunning) {
+            auditRunning = true;
+            auditStartedAt = new Date();
+            runner.execute(this::runAudit);
+        }
+        return getAuditStatus();
+    }
+
+    public synchronized Map<String, Object> getAuditStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("running", auditRunning);
+        status.put("startedAt", auditStartedAt);
+        status.put("report", lastReport);
+        status.put("error", lastError);
+        return status;
+    }
+
+    private void runAudit() {
+        AuditReport report = null;
+        String error = null;
+        try {
+            report = audit();
+        } catch (Exception e) {
+            System.err.println("[ERROR] Chain audit failed: " + e.getMessage());
+            error = e.getMessage();
+        }
+        synchronized (this) {
+            auditRunning = false;
+            lastReport = report;
+            lastError = error;
+        }
+    }
+
+    /**
+     * Audits every vote in chain order and stops at the first tampered position.
+     */
+    AuditReport audit() {
+        long started = System.currentTimeMillis();
+        Query legacy = new Query(legacyVotes()).with(Sort.by("date", "_id"));
+        Query sequenced = new Query(Criteria.where("sequence").gt(0)).with(Sort.by("sequence"));
+
+        int maxInFlight = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<SegmentResult>> inFlight = new ArrayDeque<>();
+        SegmentResult result = null;
+
+        for (Query query : Arrays.asList(legacy, sequenced)) {
+            query.cursorBatchSize(1000);
+            try (CloseableIterator<Votedata> votes = mongoTemplate.stream(query, Votedata.class)) {
+                List<Votedata> segment = new ArrayList<>(segmentSize);
+                while (votes.hasNext() && (result == null || result.tamperedSequence < 0)) {
+                    segment.add(votes.next());
+                    if (segment.size() == segmentSize || !votes.hasNext()) {
+                        Votedata[] chunk = segment.toArray(new Votedata[0]);
+                        segment.clear();
+                        inFlight.addLast(pool.submit(new SegmentTask(chunk, 0, chunk.length)));
+                        while (inFlight.size() >= maxInFlight) {
+                            result = SegmentResult.merge(result, inFlight.removeFirst().join());
+                        }
+                    }
+                }
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            ForkJoinTask<SegmentResult> task = inFlight.removeFirst();
+            if (result != null && result.tamperedSequence >= 0) {
+                task.cancel(true);
+            } else {
+                result = SegmentResult.merge(result, task.join());
+            }
+        }
+
+        // votes from before sequencing started from the same genesis hash
+        if (result != null && result.tamperedSequence < 0 && result.firstSequence <= 1) {
+            if (!ChainHeadSequencer.GENESIS_HASH.equals(result.firstPrevhash)) {
+                result.tamperedSequence = result.firstSequence;
+                result.tamperedId = result.firstId;
+                result.reason = "first block does not start from the genesis hash";
+            }
+        }
+        return new AuditReport(result, System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Votes written before sequencing; they have no sequence, the first one has sequence 0.
+     */
+    static Criteria legacyVotes() {
+        return new Criteria().orOperator(
+                Criteria.where("sequence").exists(false), Criteria.where("sequence").is(0));
+    }
+
+    /**
+     * Votes written before block inputs were stored; only their links can be checked.
+     */
+    static boolean isLegacy(Votedata vote) {
+        return vote.getBlockTimestamp() == 0;
+    }
+
+    static boolean hashMatches(Votedata vote) {
+        String[] data = { vote.getUsername(), vote.getVoterName(), vote.getCandidate() };
+        Block block = new Block(data, vote.getPrevhash(), vote.getBlockTimestamp(), vote.getNonce(), vote.getHashVersion());
+        return block.getBlockHash().equals(vote.getCurrhash());
+    }
+
+    private static class SegmentTask extends RecursiveTask<SegmentResult> {
+        private final Votedata[] votes;
+        private final int from;
+        private final int to;
+
+        SegmentTask(Votedata[] votes, int from, int to) {
+            this.votes = votes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SegmentResult compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                return verifyRange();
+            }
+            int mid = (from + to) >>> 1;
+            SegmentTask left = new SegmentTask(votes, from, mid);
+            left.fork();
+            SegmentResult right = new SegmentTask(votes, mid, to).compute();
+            return SegmentResult.merge(left.join(), right);
+        }
+
+        private SegmentResult verifyRange() {
+            SegmentResult result = null;
+            for (int i = from; i < to; i++) {
+                result = SegmentResult.merge(result, verify(votes[i]));
+                if (result.tamperedSequence >= 0) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        private static SegmentResult verify(Votedata vote) {
+            SegmentResult result = new SegmentResult(vote);
+            if (isLegacy(vote)) {
+                result.legacyVotes = 1;
+                return result;
+            }
+            if (!hashMatches(vote)) {
+                result.tamperedSequence = vote.getSequence();
+                result.tamperedId = vote.getId();
+                result.reason = "stored hash does not match block contents";
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Outcome for a contiguous run of votes. Runs are merged left to right;
+     * merging checks that the right run links onto the left one. Votes from
+     * before sequencing all have sequence 0, so only their links are checked.
+     */
+    private static class SegmentResult {
+        String firstId;
+        long firstSequence;
+        long lastSequence;
+        String firstPrevhash;
+        String lastCurrhash;
+        long checked = 1;
+        long legacyVotes;
+        long tamperedSequence = -1;
+        String tamperedId;
+        String reason;
+
+        SegmentResult(Votedata vote) {
+            firstId = vote.getId();
+            firstSequence = vote.getSequence();
+            lastSequence = vote.getSequence();
+            firstPrevhash = vote.getPrevhash();
+            lastCurrhash = vote.getCurrhash();
+        }
+
+        static SegmentResult merge(SegmentResult left, SegmentResult right) {
+            if (left == null) {
+                return right;
+            }
+            if (left.tamperedSequence >= 0) {
+                return left;
+            }
+            // the first sequenced vote is numbered after the unsequenced ones, so a gap only counts between two sequenced votes
+            if (left.lastSequence > 0 && right.firstSequence != left.lastSequence + 1) {
+                left.tamperedSequence = right.firstSequence;
+                left.tamperedId = right.firstId;
+                left.reason = "sequence gap after " + left.lastSequence;
+            } else if (!left.lastCurrhash.equals(right.firstPrevhash)) {
+                left.tamperedSequence = right.firstSequence;
+                left.tamperedId = right.firstId;
+                left.reason = "prevhash does not link to the previous block";
+            } else if (right.tamperedSequence >= 0) {
+                left.tamperedSequence = right.tamperedSequence;
+                left.tamperedId = right.tamperedId;
+                left.reason = right.reason;
+            }
+            left.checked += right.checked;
+            left.legacyVotes += right.legacyVotes;
+            left.lastSequence = right.lastSequence;
+            left.lastCurrhash = right.lastCurrhash;
+            return left;
+        }
+    }
+
+    public static class AuditReport {
+        private final boolean intact;
+        private final long votesChecked;
+        private final long legacyVotes;
+        private final Long firstTamperedSequence;
+        private final String firstTamperedId;
+        private final String reason;
+        private final long elapsedMs;
+        private final double votesPerSecond;
+
+        AuditReport(SegmentResult result, long elapsedMs) {
+            boolean tampered = result != null && result.tamperedSequence >= 0;
+            this.intact = !tampered;
+            this.votesChecked = result == null ? 0 : result.checked;
+            this.legacyVotes = result == null ? 0 : result.legacyVotes;
+            this.firstTamperedSequence = tampered ? result.tamperedSequence : null;
+            this.firstTamperedId = tampered ? result.tamperedId : null;
+            this.reason = tampered ? result.reason : null;
+            this.elapsedMs = elapsedMs;
+            this.votesPerSecond = elapsedMs > 0 ? votesChecked * 1000.0 / elapsedMs : votesChecked;
+        }
+
+        // Getters
+        public boolean isIntact() { return intact; }
+        public long getVotesChecked() { return votesChecked; }
+        public long getLegacyVotes() { return legacyVotes; }
+        public Long getFirstTamperedSequence() { return firstTamperedSequence; }
+        public String getFirstTamperedId() { return firstTamperedId; }
+        public String getReason() { return reason; }
+        public long getElapsedMs() { return elapsedMs; }
+        public double getVotesPerSecond() { return votesPerSecond; }
+    }
+}
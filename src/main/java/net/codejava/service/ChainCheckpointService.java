@@ -0,0 +1,229 @@
+package net.codejava.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import net.codejava.helper.HashingCore;
+import net.codejava.model.ChainCheckpoint;
+import net.codejava.model.Votedata;
+import net.codejava.repository.ChainCheckpointRepo;
+
+/**
+ * Continuous verification of the votedata chain from the last trusted
+ * checkpoint forward. Each run re-hashes only the votes appended since the
+ * previous run, and every checkpoint-interval verified votes a signed
+ * checkpoint is stored so a restart resumes from there instead of from
+ * genesis.
+ *
+ * Checkpoints are only written and trusted when vote.checkpoint.secret is
+ * set. Without it the chain is still verified, but every restart verifies
+ * from genesis again.
+ */
+@Service
+public class ChainCheckpointService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ChainCheckpointRepo checkpointRepo;
+
+    @Autowired
+    private ChainHeadSequencer chainHeadSequencer;
+
+    // not to be shared with any other key such as the wallet's; empty disables checkpoints
+    @Value("${vote.checkpoint.secret:}")
+    private String secret;
+
+    @Value("${vote.checkpoint.interval:1000}")
+    private long checkpointInterval;
+
+    @Value("${vote.checkpoint.verify-interval-ms:5000}")
+    private long verifyIntervalMs;
+
+    // verified tip, written by the verifier thread and reset(), read by getStatus()
+    private volatile long verifiedSequence;
+    private volatile String verifiedHash = ChainHeadSequencer.GENESIS_HASH;
+    private volatile long lastCheckpointSequence;
+    private volatile Long tamperedSequence;
+    private volatile String tamperReason;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (secret.isEmpty()) {
+            System.err.println("[INIT] vote.checkpoint.secret is not set, chain checkpoints are disabled and verification starts from genesis");
+        }
+        loadCheckpoint();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chain-checkpoint-verify");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::verifyNewBlocks, verifyIntervalMs, verifyIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public Map<String, Object> getStatus() {
+        long liveSequence = chainHeadSequencer.getTipSequence();
+        Map<String, Object> status = new HashMap<>();
+        status.put("verifiedSequence", verifiedSequence);
+        status.put("verifiedHash", verifiedHash);
+        status.put("liveSequence", liveSequence);
+        status.put("lag", Math.max(0, liveSequence - verifiedSequence));
+        status.put("lastCheckpointSequence", lastCheckpointSequence);
+        status.put("checkpointsEnabled", !secret.isEmpty());
+        status.put("tamperedSequence", tamperedSequence);
+        status.put("tamperReason", tamperReason);
+        return status;
+    }
+
+    public synchronized void reset() {
+        checkpointRepo.deleteAll();
+        verifiedSequence = 0;
+        verifiedHash = ChainHeadSequencer.GENESIS_HASH;
+        lastCheckpointSequence = 0;
+        tamperedSequence = null;
+        tamperReason = null;
+    }
+
+    /**
+     * Clears a verification failure and verifies again from the last trusted
+     * checkpoint, e.g. once the tampered votes have been restored. A chain
+     * that is still broken fails at the same block again.
+     */
+    public synchronized void reverify() {
+        System.out.println("[INFO] Re-verifying the chain after failure at sequence " + tamperedSequence);
+        verifiedSequence = 0;
+        verifiedHash = ChainHeadSequencer.GENESIS_HASH;
+        lastCheckpointSequence = 0;
+        tamperedSequence = null;
+        tamperReason = null;
+        loadCheckpoint();
+        scheduler.execute(this::verifyNewBlocks);
+    }
+
+    /**
+     * Re-hashes every vote after the verified tip and links it onto the tip.
+     * Stops advancing at the first block that fails, until reverify().
+     */
+    synchronized void verifyNewBlocks() {
+        if (tamperedSequence != null) {
+            return;
+        }
+        Query query = new Query(Criteria.where("sequence").gt(verifiedSequence)).with(Sort.by("sequence"));
+        query.cursorBatchSize(1000);
+        try (CloseableIterator<Votedata> votes = mongoTemplate.stream(query, Votedata.class)) {
+            long nextSequence = verifiedSequence + 1;
+            String prevhash = verifiedHash;
+            if (verifiedSequence == 0) {
+                // sequencing continued from the votes written before it, as ChainHeadSequencer.loadTail does
+                Query legacy = new Query(ChainAuditService.legacyVotes());
+                nextSequence = mongoTemplate.count(legacy, Votedata.class) + 1;
+                Votedata legacyTip = mongoTemplate.findOne(
+                        legacy.with(Sort.by(Sort.Direction.DESC, "date", "_id")), Votedata.class);
+                prevhash = legacyTip != null ? legacyTip.getCurrhash() : ChainHeadSequencer.GENESIS_HASH;
+            }
+            while (votes.hasNext()) {
+                Votedata vote = votes.next();
+                String problem = check(vote, nextSequence, prevhash);
+                if (problem != null) {
+                    tamperedSequence = vote.getSequence();
+                    tamperReason = problem;
+                    System.err.println("[ERROR] Chain verification failed at sequence " + vote.getSequence() + ": " + problem);
+                    return;
+                }
+                verifiedSequence = vote.getSequence();
+                verifiedHash = vote.getCurrhash();
+                nextSequence = verifiedSequence + 1;
+                prevhash = verifiedHash;
+                if (!secret.isEmpty() && verifiedSequence - lastCheckpointSequence >= checkpointInterval) {
+                    saveCheckpoint();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[ERROR] Chain verification run failed: " + e.getMessage());
+        }
+    }
+
+    private String check(Votedata vote, long expectedSequence, String expectedPrevhash) {
+        if (vote.getSequence() != expectedSequence) {
+            return "expected sequence " + expectedSequence;
+        }
+        if (!Objects.equals(expectedPrevhash, vote.getPrevhash())) {
+            return "prevhash does not link to the previous block";
+        }
+        if (!ChainAuditService.isLegacy(vote) && !ChainAuditService.hashMatches(vote)) {
+            return "stored hash does not match block contents";
+        }
+        return null;
+    }
+
+    private void saveCheckpoint() {
+        ChainCheckpoint checkpoint = new ChainCheckpoint();
+        checkpoint.setSequence(verifiedSequence);
+        checkpoint.setTipHash(verifiedHash);
+        checkpoint.setSignature(sign(verifiedSequence, verifiedHash));
+        checkpoint.setDate(new Date());
+        checkpointRepo.save(checkpoint);
+        lastCheckpointSequence = verifiedSequence;
+    }
+
+    private synchronized void loadCheckpoint() {
+        if (secret.isEmpty()) {
+            return;
+        }
+        try {
+            ChainCheckpoint checkpoint = checkpointRepo.findTopByOrderBySequenceDesc();
+            if (checkpoint == null) {
+                return;
+            }
+            if (!sign(checkpoint.getSequence(), checkpoint.getTipHash()).equals(checkpoint.getSignature())) {
+                System.err.println("[INIT] Checkpoint at sequence " + checkpoint.getSequence() + " has a bad signature, verifying from genesis");
+                return;
+            }
+            verifiedSequence = checkpoint.getSequence();
+            verifiedHash = checkpoint.getTipHash();
+            lastCheckpointSequence = checkpoint.getSequence();
+            System.out.println("[INIT] Chain verification resumes from checkpoint at sequence " + verifiedSequence);
+        } catch (Exception e) {
+            System.err.println("[INIT] Failed to load chain checkpoint: " + e.getMessage());
+        }
+    }
+
+    private String sign(long sequence, String tipHash) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HashingCore.toHex(mac.doFinal((sequence + ":" + tipHash).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("HmacSHA256 not available", e);
+        }
+    }
+}
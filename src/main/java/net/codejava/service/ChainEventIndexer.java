@@ -0,0 +1,383 @@
+package net.codejava.service;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
+
+import com.mongodb.client.result.UpdateResult;
+
+import net.codejava.model.ChainCandidate;
+import net.codejava.model.ChainEvent;
+import net.codejava.model.ChainIndexCheckpoint;
+import net.codejava.repository.ChainCandidateRepo;
+import net.codejava.repository.ChainEventRepo;
+import net.codejava.repository.ChainIndexCheckpointRepo;
+import net.codejava.smartcontract.RpcClient;
+import net.codejava.smartcontract.VoteBatcher;
+
+/**
+ * Follows the Voting contract's logs into Mongo. Confirmed blocks are read in
+ * ranges with eth_getLogs; every log is stored once in chain_events and
+ * applied to chain_candidates, and the last indexed block is checkpointed so
+ * a restart continues where it stopped.
+ *
+ * Before each run the checkpointed block's hash is compared with the chain.
+ * If it changed, the last reorg-depth blocks are dropped from the index and
+ * read again.
+ *
+ * An event is stored as unapplied and marked applied once chain_candidates
+ * has it. If a run dies in between, the next one rebuilds chain_candidates
+ * from the stored events. A failing run is retried with exponential backoff
+ * up to max-backoff-ms.
+ */
+@Service
+public class ChainEventIndexer {
+
+    private static final String CHECKPOINT_ID = "voting";
+
+    static final Event CANDIDATE_ADDED = new Event("CandidateAdded", Arrays.asList(
+            new TypeReference<Uint256>(true) {}, new TypeReference<Utf8String>() {}, new TypeReference<Utf8String>() {}));
+    private static final Event CANDIDATE_REMOVED = new Event("CandidateRemoved", Arrays.asList(
+            new TypeReference<Uint256>(true) {}));
+    private static final Event VOTED = new Event("VotedEvent", Arrays.asList(
+            new TypeReference<Uint256>(true) {}, new TypeReference<Address>() {}));
+
+    private static final String CANDIDATE_ADDED_TOPIC = EventEncoder.encode(CANDIDATE_ADDED);
+    private static final String CANDIDATE_REMOVED_TOPIC = EventEncoder.encode(CANDIDATE_REMOVED);
+    private static final String VOTED_TOPIC = EventEncoder.encode(VOTED);
+    private static final String COMMITMENT_VOTED_TOPIC = EventEncoder.encode(VoteBatcher.COMMITMENT_VOTED);
+
+    @Autowired
+    private RpcClient rpcClient;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CandidateChainIdCache candidateChainIdCache;
+
+    @Autowired
+    private ChainEventRepo chainEventRepo;
+
+    @Autowired
+    private ChainCandidateRepo chainCandidateRepo;
+
+    @Autowired
+    private ChainIndexCheckpointRepo checkpointRepo;
+
+    @Value("${CONTRACT_ADDRESS}")
+    private String contractAddress;
+
+    @Value("${chain.indexer.enabled:true}")
+    private boolean enabled;
+
+    // block the contract was deployed in; nothing before it is read
+    @Value("${chain.indexer.start-block:0}")
+    private long startBlock;
+
+    // only blocks this far behind the head are indexed
+    @Value("${chain.indexer.confirmations:2}")
+    private long confirmations;
+
+    @Value("${chain.indexer.reorg-depth:64}")
+    private long reorgDepth;
+
+    // most blocks per eth_getLogs call, public RPC nodes cap the range
+    @Value("${chain.indexer.max-range:2000}")
+    private long maxRange;
+
+    @Value("${chain.indexer.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Value("${chain.indexer.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    private Web3j web3j;
+    private ScheduledExecutorService scheduler;
+
+    private volatile long lastBlock = -1;
+    private volatile String lastBlockHash;
+    private volatile long headBlock = -1;
+    private volatile long reorgs;
+    private volatile int failures;
+    private volatile String lastError;
+    private long retryAt;
+
+    @PostConstruct
+    public void start() {
+        web3j = rpcClient.getWeb3j();
+        ChainIndexCheckpoint checkpoint = checkpointRepo.findById(CHECKPOINT_ID).orElse(null);
+        if (checkpoint != null) {
+            lastBlock = checkpoint.getLastBlock();
+            lastBlockHash = checkpoint.getBlockHash();
+        } else {
+            lastBlock = startBlock - 1;
+        }
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chain-event-indexer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::index, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        System.out.println("[INIT] Chain event indexer resumes after block " + lastBlock);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public List<ChainCandidate> getCandidates() {
+        return chainCandidateRepo.findAll();
+    }
+
+    /**
+     * The indexed logs of a transaction; empty until its block is indexed.
+     */
+    public List<ChainEvent> getEvents(String txHash) {
+        return chainEventRepo.findByTxHash(txHash);
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("lastBlock", lastBlock);
+        status.put("headBlock", headBlock);
+        status.put("lag", headBlock < 0 ? null : Math.max(0, headBlock - lastBlock));
+        status.put("reorgs", reorgs);
+        status.put("failures", failures);
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    synchronized void index() {
+        if (System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        try {
+            if (lastBlockHash != null && !lastBlockHash.equals(blockHash(lastBlock))) {
+                rewind();
+            }
+            if (mongoTemplate.exists(new Query(Criteria.where("applied").is(false)), ChainEvent.class)) {
+                reapply();
+            }
+            headBlock = web3j.ethBlockNumber().send().getBlockNumber().longValue();
+            long safeHead = headBlock - confirmations;
+            while (lastBlock < safeHead) {
+                long from = lastBlock + 1;
+                long to = Math.min(safeHead, from + maxRange - 1);
+                indexRange(from, to);
+                saveCheckpoint(to, blockHash(to));
+            }
+            if (failures > 0) {
+                System.out.println("[BLOCKCHAIN] Chain event indexing recovered after " + failures + " failed runs");
+            }
+            failures = 0;
+            lastError = null;
+        } catch (Exception e) {
+            failures++;
+            lastError = e.getMessage();
+            long backoff = Math.min(maxBackoffMs, pollIntervalMs << Math.min(failures, 16));
+            retryAt = System.currentTimeMillis() + backoff;
+            System.err.println("[ERROR] Chain event indexing failed, retrying in " + backoff + "ms: " + e.getMessage());
+        }
+    }
+
+    private void indexRange(long from, long to) throws Exception {
+        EthFilter filter = new EthFilter(
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(from)),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(to)),
+                contractAddress);
+        filter.addOptionalTopics(CANDIDATE_ADDED_TOPIC, CANDIDATE_REMOVED_TOPIC, VOTED_TOPIC, COMMITMENT_VOTED_TOPIC);
+        EthLog response = web3j.ethGetLogs(filter).send();
+        if (response.hasError()) {
+            throw new IllegalStateException("eth_getLogs " + from + "-" + to + ": " + response.getError().getMessage());
+        }
+        for (EthLog.LogResult<?> result : response.getLogs()) {
+            ChainEvent event = decode((Log) result.get());
+            if (event != null && store(event)) {
+                apply(event);
+                markApplied(new Query(Criteria.where("_id").is(event.getId())));
+            }
+        }
+    }
+
+    private ChainEvent decode(Log log) {
+        List<String> topics = log.getTopics();
+        if (topics.isEmpty()) {
+            return null;
+        }
+        String topic = topics.get(0);
+        ChainEvent event = new ChainEvent();
+        event.setId(log.getTransactionHash() + ":" + log.getLogIndex());
+        event.setBlockNumber(log.getBlockNumber().longValue());
+        event.setBlockHash(log.getBlockHash());
+        event.setTxHash(log.getTransactionHash());
+        event.setLogIndex(log.getLogIndex().longValue());
+        if (CANDIDATE_ADDED_TOPIC.equals(topic)) {
+            List<Type> values = FunctionReturnDecoder.decode(log.getData(), CANDIDATE_ADDED.getNonIndexedParameters());
+            event.setType(ChainEvent.CANDIDATE_ADDED);
+            event.setCandidateId(Numeric.toBigInt(topics.get(1)).longValue());
+            event.setName((String) values.get(0).getValue());
+            event.setParty((String) values.get(1).getValue());
+        } else if (CANDIDATE_REMOVED_TOPIC.equals(topic)) {
+            event.setType(ChainEvent.CANDIDATE_REMOVED);
+            event.setCandidateId(Numeric.toBigInt(topics.get(1)).longValue());
+        } else if (VOTED_TOPIC.equals(topic)) {
+            List<Type> values = FunctionReturnDecoder.decode(log.getData(), VOTED.getNonIndexedParameters());
+            event.setType(ChainEvent.VOTED);
+            event.setCandidateId(Numeric.toBigInt(topics.get(1)).longValue());
+            event.setVoter((String) values.get(0).getValue());
+        } else if (COMMITMENT_VOTED_TOPIC.equals(topic)) {
+            event.setType(ChainEvent.COMMITMENT_VOTED);
+            event.setVoter(topics.get(1));
+            event.setCandidateId(Numeric.toBigInt(topics.get(2)).longValue());
+        } else {
+            return null;
+        }
+        return event;
+    }
+
+    /**
+     * Inserts the event, unapplied, unless it is already stored; true if it
+     * was new, so a range read twice is only applied once.
+     */
+    private boolean store(ChainEvent event) {
+        Update insert = new Update()
+                .setOnInsert("type", event.getType())
+                .setOnInsert("blockNumber", event.getBlockNumber())
+                .setOnInsert("blockHash", event.getBlockHash())
+                .setOnInsert("txHash", event.getTxHash())
+                .setOnInsert("logIndex", event.getLogIndex())
+                .setOnInsert("candidateId", event.getCandidateId())
+                .setOnInsert("name", event.getName())
+                .setOnInsert("party", event.getParty())
+                .setOnInsert("voter", event.getVoter())
+                .setOnInsert("applied", false);
+        UpdateResult result = mongoTemplate.upsert(new Query(Criteria.where("_id").is(event.getId())), insert, ChainEvent.class);
+        return result.getUpsertedId() != null;
+    }
+
+    private void apply(ChainEvent event) {
+        Query candidate = new Query(Criteria.where("_id").is(event.getCandidateId()));
+        switch (event.getType()) {
+            case ChainEvent.CANDIDATE_ADDED:
+                mongoTemplate.upsert(candidate, new Update()
+                        .set("name", event.getName())
+                        .set("party", event.getParty())
+                        .set("active", true)
+                        .setOnInsert("voteCount", 0L), ChainCandidate.class);
+                candidateChainIdCache.candidateAdded(event.getCandidateId(), event.getParty());
+                break;
+            case ChainEvent.CANDIDATE_REMOVED:
+                mongoTemplate.updateFirst(candidate, new Update().set("active", false), ChainCandidate.class);
+                candidateChainIdCache.candidateRemoved(event.getCandidateId());
+                break;
+            default:
+                mongoTemplate.upsert(candidate, new Update().inc("voteCount", 1L), ChainCandidate.class);
+                break;
+        }
+    }
+
+    private void markApplied(Query events) {
+        mongoTemplate.updateMulti(events, new Update().set("applied", true), ChainEvent.class);
+    }
+
+    /**
+     * Some stored events may or may not have been applied, and a vote can't
+     * be counted twice, so chain_candidates is recounted from all of them.
+     */
+    private void reapply() {
+        System.out.println("[BLOCKCHAIN] Found unapplied chain events, rebuilding candidate tallies");
+        rebuildCandidates();
+        markApplied(new Query(Criteria.where("applied").is(false)));
+    }
+
+    /**
+     * Drops everything indexed from the last reorg-depth blocks and rebuilds
+     * chain_candidates from the events that remain.
+     */
+    private void rewind() throws Exception {
+        long rewindTo = Math.max(startBlock - 1, lastBlock - reorgDepth);
+        System.out.println("[BLOCKCHAIN] Reorg detected at block " + lastBlock + ", re-indexing from block " + (rewindTo + 1));
+        chainEventRepo.deleteByBlockNumberGreaterThan(rewindTo);
+        rebuildCandidates();
+        saveCheckpoint(rewindTo, rewindTo >= 0 ? blockHash(rewindTo) : null);
+        reorgs++;
+    }
+
+    private void rebuildCandidates() {
+        chainCandidateRepo.deleteAll();
+        for (ChainEvent event : chainEventRepo.findByTypeInOrderByBlockNumberAscLogIndexAsc(
+                Arrays.asList(ChainEvent.CANDIDATE_ADDED, ChainEvent.CANDIDATE_REMOVED))) {
+            apply(event);
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("type").in(ChainEvent.VOTED, ChainEvent.COMMITMENT_VOTED)),
+            Aggregation.group("candidateId").count().as("count"));
+        AggregationResults<Document> results = mongoTemplate.aggregate(aggregation, ChainEvent.class, Document.class);
+        for (Document d : results.getMappedResults()) {
+            mongoTemplate.upsert(new Query(Criteria.where("_id").is(((Number) d.get("_id")).longValue())),
+                    new Update().set("voteCount", ((Number) d.get("count")).longValue()), ChainCandidate.class);
+        }
+        candidateChainIdCache.reload();
+    }
+
+    private void saveCheckpoint(long block, String hash) {
+        ChainIndexCheckpoint checkpoint = new ChainIndexCheckpoint();
+        checkpoint.setId(CHECKPOINT_ID);
+        checkpoint.setLastBlock(block);
+        checkpoint.setBlockHash(hash);
+        checkpoint.setDate(new Date());
+        checkpointRepo.save(checkpoint);
+        lastBlock = block;
+        lastBlockHash = hash;
+        candidateChainIdCache.indexedThrough(block);
+    }
+
+    private String blockHash(long block) throws Exception {
+        EthBlock.Block header = web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(block)), false)
+                .send().getBlock();
+        return header == null ? null : header.getHash();
+    }
+}
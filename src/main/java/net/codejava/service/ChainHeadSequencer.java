@@ -0,0 +1,170 @@
+package net.codejava.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import net.codejava.model.Block;
+import net.codejava.model.Votedata;
+import net.codejava.repository.VoteRepo;
+
+/**
+ * Owns the tip of the local vote hash chain. Every new vote is linked here
+ * under a single lock, so the chain stays linear no matter how many votes
+ * arrive at once and the previous hash never has to be read back from Mongo.
+ */
+@Service
+public class ChainHeadSequencer {
+
+    public static final String GENESIS_HASH = "0";
+
+    @Autowired
+    private VoteRepo voterepo;
+
+    // leading zero hex digits required of each block hash, 0 to skip mining
+    @Value("${vote.chain.difficulty:0}")
+    private int difficulty;
+
+    @Value("${vote.chain.mining-timeout-ms:2000}")
+    private long miningTimeoutMs;
+
+    @Value("${vote.chain.recover-attempts:5}")
+    private int recoverAttempts;
+
+    @Value("${vote.chain.recover-backoff-ms:2000}")
+    private long recoverBackoffMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private String tipHash = GENESIS_HASH;
+    private long tipSequence = 0;
+    // false while the tip may not match what is stored; nothing is linked until it does
+    private boolean synced = false;
+
+    /**
+     * Loads the tip from votedata, retrying while Mongo is unreachable. Fails
+     * startup if it never succeeds: starting from genesis instead would write
+     * a second chain over the stored one.
+     */
+    @PostConstruct
+    public void recover() throws InterruptedException {
+        lock.lock();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    loadTail();
+                    System.out.println("[INIT] Chain head recovered at sequence " + tipSequence + " hash " + tipHash);
+                    return;
+                } catch (RuntimeException e) {
+                    if (attempt >= recoverAttempts) {
+                        throw new IllegalStateException("Could not recover the chain head after " + attempt + " attempts", e);
+                    }
+                    System.err.println("[INIT] Failed to recover chain head (attempt " + attempt + " of "
+                            + recoverAttempts + "): " + e.getMessage());
+                    Thread.sleep(recoverBackoffMs * attempt);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Links a new block onto the tip and stamps the vote with its sequence
+     * number, hashes and block inputs; data is {username, name, candidate}.
+     * The tip advances immediately; call {@link #resync} if the vote may not
+     * have been stored. Throws IllegalStateException, leaving the tip as it
+     * was, if the block can't be mined within the mining timeout.
+     */
+    public Block append(String[] data, Votedata vote) {
+        lock.lock();
+        try {
+            if (!synced) {
+                loadTail();
+            }
+            Block block = new Block(data, tipHash);
+            if (difficulty > 0 && !block.mineBlock(difficulty, miningTimeoutMs)) {
+                // an unmined block would fail the difficulty check of every audit
+                System.err.println("[ERROR] Mining timed out after " + miningTimeoutMs + "ms, block rejected");
+                throw new IllegalStateException("Your vote could not be recorded in time, please try again");
+            }
+            long sequence = tipSequence + 1;
+            vote.setSequence(sequence);
+            vote.setPrevhash(block.getPreviousBlockHash());
+            vote.setCurrhash(block.getBlockHash());
+            vote.setVoterName(data[1]);
+            vote.setBlockTimestamp(block.getTimestamp());
+            vote.setNonce(block.getNonce());
+            vote.setHashVersion(block.getHashVersion());
+            tipHash = block.getBlockHash();
+            tipSequence = sequence;
+            return block;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the tip from the last block actually stored, after a write that
+     * may have stored only part of what was linked. If Mongo can't be read
+     * the next {@link #append} tries again before linking anything.
+     */
+    public void resync() {
+        lock.lock();
+        try {
+            synced = false;
+            loadTail();
+            System.out.println("[INFO] Chain head resynced at sequence " + tipSequence + " hash " + tipHash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void reset() {
+        lock.lock();
+        try {
+            tipHash = GENESIS_HASH;
+            tipSequence = 0;
+            synced = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getTipHash() {
+        lock.lock();
+        try {
+            return tipHash;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getTipSequence() {
+        lock.lock();
+        try {
+            return tipSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // caller holds the lock
+    private void loadTail() {
+        Votedata head = voterepo.findTopByOrderBySequenceDesc();
+        if (head != null) {
+            tipHash = head.getCurrhash();
+            tipSequence = head.getSequence();
+        } else {
+            // votes written before sequencing existed, fall back to the newest one
+            Votedata latest = voterepo.findTopByOrderByDateDesc();
+            tipHash = latest != null ? latest.getCurrhash() : GENESIS_HASH;
+            tipSequence = latest != null ? voterepo.count() : 0;
+        }
+        synced = true;
+    }
+}
@@ -0,0 +1,248 @@
+package net.codejava.service;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes live tally changes to dashboard observers over Server-Sent Events.
+ * One snapshot is taken per tick and shared by every subscriber. Each
+ * subscriber holds at most one pending frame: if it is still sending when
+ * the next tick arrives, the new changes are merged into that frame instead
+ * of being queued behind it.
+ *
+ * A send that hasn't finished after send-timeout-ms evicts its subscriber,
+ * so a client that stopped reading can't hold a sender thread for long.
+ */
+@Service
+public class LiveResultsBroadcaster {
+
+    @Autowired
+    private LiveTallyService liveTallyService;
+
+    @Autowired
+    private VoteService voteService;
+
+    @Value("${vote.results.stream-interval-ms:1000}")
+    private long intervalMs;
+
+    @Value("${vote.results.stream-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    @Value("${vote.results.stream-senders:4}")
+    private int senderThreads;
+
+    @Value("${vote.results.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // counts as of the last tick, used to work out what changed
+    private Map<String, Long> lastCounts = new HashMap<>();
+    private boolean lastActive;
+
+    private ScheduledExecutorService ticker;
+    private ExecutorService senders;
+
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "live-results-tick");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(senderThreads, r -> {
+            Thread t = new Thread(r, "live-results-send-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    /**
+     * Registers a new observer. It is sent the full tally straight away and
+     * only the changed counts after that.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        subscriber.offer(liveTallyService.snapshot(), liveTallyService.getTotalVotes(), voteService.isVotingActive());
+        schedule(subscriber);
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private void tick() {
+        try {
+            evictStalled();
+            boolean active = voteService.isVotingActive();
+            if (subscribers.isEmpty()) {
+                lastCounts = liveTallyService.snapshot();
+                lastActive = active;
+                return;
+            }
+            Map<String, Long> counts = liveTallyService.snapshot();
+            Map<String, Long> changed = new HashMap<>();
+            for (Map.Entry<String, Long> count : counts.entrySet()) {
+                if (!count.getValue().equals(lastCounts.get(count.getKey()))) {
+                    changed.put(count.getKey(), count.getValue());
+                }
+            }
+            lastCounts = counts;
+            // voting opening or closing is news even when no count moved
+            if (changed.isEmpty() && active == lastActive) {
+                return;
+            }
+            lastActive = active;
+            long total = liveTallyService.getTotalVotes();
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(changed, total, active);
+                schedule(subscriber);
+            }
+        } catch (Exception e) {
+            System.err.println("[ERROR] Live results tick failed: " + e.getMessage());
+        }
+    }
+
+    private void evictStalled() {
+        long now = System.currentTimeMillis();
+        for (Subscriber subscriber : subscribers) {
+            long stalledFor;
+            synchronized (subscriber.sendLock) {
+                stalledFor = now - subscriber.sendStartedAt;
+                if (subscriber.sender == null || stalledFor <= sendTimeoutMs) {
+                    continue;
+                }
+                subscriber.evicted = true;
+                // under the lock the sender is still inside this send, so the
+                // interrupt can't reach a send for another subscriber
+                subscriber.sender.interrupt();
+            }
+            subscribers.remove(subscriber);
+            System.err.println("[INFO] Evicting live results subscriber, send stalled for " + stalledFor + "ms");
+            subscriber.emitter.completeWithError(new IOException("Send timed out"));
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.sending.compareAndSet(false, true)) {
+            senders.submit(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            Map<String, Object> frame = subscriber.take();
+            if (frame == null) {
+                subscriber.sending.set(false);
+                // a frame may have been offered between take() and the flag reset
+                if (subscriber.hasPending() && subscriber.sending.compareAndSet(false, true)) {
+                    continue;
+                }
+                return;
+            }
+            synchronized (subscriber.sendLock) {
+                if (subscriber.evicted || !subscribers.contains(subscriber)) {
+                    return;
+                }
+                subscriber.sendStartedAt = System.currentTimeMillis();
+                subscriber.sender = Thread.currentThread();
+            }
+            try {
+                subscriber.emitter.send(SseEmitter.event().name("tally").data(frame, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(subscriber);
+                subscriber.emitter.completeWithError(e);
+                subscriber.sending.set(false);
+                return;
+            } finally {
+                synchronized (subscriber.sendLock) {
+                    subscriber.sender = null;
+                    // an eviction's interrupt must not leak into the next task on this thread
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    private static class Subscriber {
+        final SseEmitter emitter;
+        final AtomicBoolean sending = new AtomicBoolean();
+
+        // guards the fields below, so an eviction only interrupts the send it timed out
+        final Object sendLock = new Object();
+        // set while a send is in progress, for the stall check
+        Thread sender;
+        long sendStartedAt;
+        boolean evicted;
+
+        private Map<String, Long> pendingVotes;
+        private long pendingTotal;
+        private boolean pendingActive;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        synchronized void offer(Map<String, Long> changed, long total, boolean active) {
+            if (pendingVotes == null) {
+                pendingVotes = new HashMap<>();
+            }
+            pendingVotes.putAll(changed);
+            pendingTotal = total;
+            pendingActive = active;
+        }
+
+        synchronized boolean hasPending() {
+            return pendingVotes != null;
+        }
+
+        synchronized Map<String, Object> take() {
+            if (pendingVotes == null) {
+                return null;
+            }
+            Map<String, Object> frame = new HashMap<>();
+            frame.put("votesByCandidate", pendingVotes);
+            frame.put("totalVotes", pendingTotal);
+            frame.put("isVotingActive", pendingActive);
+            frame.put("lastUpdated", new Date());
+            pendingVotes = null;
+            return frame;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package net.codejava.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import net.codejava.model.Candidate;
+import net.codejava.model.Votedata;
+import net.codejava.repository.CandidateRepo;
+
+/**
+ * In-memory vote counts, one LongAdder per party. The vote pipeline adds to
+ * it after every stored batch and the results pages read from it, so showing
+ * the tally never touches Mongo. Counts are rebuilt from votedata at startup
+ * and periodically reconciled against it.
+ */
+@Service
+public class LiveTallyService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CandidateRepo candidaterepo;
+
+    @Value("${vote.tally.reconcile-interval-ms:30000}")
+    private long reconcileIntervalMs;
+
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    // candidate documents change rarely, keep a snapshot for the read paths
+    private volatile List<Candidate> candidates = Collections.emptyList();
+
+    // drift seen on the previous reconcile, only corrected if it persists
+    private Map<String, Long> lastDrift = Collections.emptyMap();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        try {
+            refreshCandidates();
+            for (Map.Entry<String, Long> count : countStoredVotes().entrySet()) {
+                counter(count.getKey()).add(count.getValue());
+            }
+            System.out.println("[INIT] Live tally rebuilt from votedata: " + snapshot());
+        } catch (Exception e) {
+            System.err.println("[INIT] Failed to rebuild live tally: " + e.getMessage());
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "live-tally-reconcile");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcile, reconcileIntervalMs, reconcileIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public void record(Map<String, Integer> deltas) {
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            counter(delta.getKey()).add(delta.getValue());
+        }
+    }
+
+    public long getVotes(String party) {
+        LongAdder adder = party == null ? null : counters.get(party);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public long getTotalVotes() {
+        long total = 0;
+        for (LongAdder adder : counters.values()) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    public Map<String, Long> snapshot() {
+        Map<String, Long> votes = new HashMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            votes.put(counter.getKey(), counter.getValue().sum());
+        }
+        return votes;
+    }
+
+    /**
+     * Candidates with their live vote counts filled in.
+     */
+    public List<Candidate> getCandidates() {
+        List<Candidate> snapshot = candidates;
+        List<Candidate> result = new ArrayList<>(snapshot.size());
+        for (Candidate c : snapshot) {
+            result.add(withVoteCount(c, (int) getVotes(c.getParty())));
+        }
+        return result;
+    }
+
+    /**
+     * Reloads the candidate snapshot; call after candidates are added or removed.
+     */
+    public void refreshCandidates() {
+        List<Candidate> loaded = candidaterepo.findAll();
+        for (Candidate c : loaded) {
+            if (c.getParty() != null) {
+                counter(c.getParty());
+            }
+        }
+        candidates = Collections.unmodifiableList(loaded);
+    }
+
+    public void reset() {
+        for (LongAdder adder : counters.values()) {
+            adder.reset();
+        }
+        synchronized (this) {
+            lastDrift = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Compares the counters with votedata. A vote stored between the two reads
+     * looks like drift for one round, so a correction is only applied when the
+     * same drift shows up on two consecutive runs.
+     */
+    synchronized void reconcile() {
+        try {
+            refreshCandidates();
+            Map<String, Long> stored = countStoredVotes();
+            Map<String, Long> live = snapshot();
+            Map<String, Long> drift = new HashMap<>();
+            Set<String> parties = new HashSet<>(stored.keySet());
+            parties.addAll(live.keySet());
+            for (String party : parties) {
+                long diff = stored.getOrDefault(party, 0L) - live.getOrDefault(party, 0L);
+                if (diff != 0) {
+                    drift.put(party, diff);
+                }
+            }
+            for (Map.Entry<String, Long> d : drift.entrySet()) {
+                if (d.getValue().equals(lastDrift.get(d.getKey()))) {
+                    counter(d.getKey()).add(d.getValue());
+                    System.out.println("[TALLY] Corrected " + d.getKey() + " by " + d.getValue());
+                }
+            }
+            lastDrift = drift;
+        } catch (Exception e) {
+            System.err.println("[ERROR] Live tally reconcile failed: " + e.getMessage());
+        }
+    }
+
+    // stored votes per party, straight from votedata
+    Map<String, Long> countStoredVotes() {
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("candidate").ne(null)),
+            Aggregation.group("candidate").count().as("count"));
+        AggregationResults<Document> results = mongoTemplate.aggregate(aggregation, Votedata.class, Document.class);
+        Map<String, Long> counts = new HashMap<>();
+        for (Document d : results.getMappedResults()) {
+            counts.put(d.getString("_id"), ((Number) d.get("count")).longValue());
+        }
+        return counts;
+    }
+
+    private LongAdder counter(String party) {
+        return counters.computeIfAbsent(party, p -> new LongAdder());
+    }
+
+    private static Candidate withVoteCount(Candidate c, int voteCount) {
+        Candidate copy = new Candidate();
+        copy.setId(c.getId());
+        copy.setUsername(c.getUsername());
+        copy.setFirstname(c.getFirstname());
+        copy.setLastname(c.getLastname());
+        copy.setParty(c.getParty());
+        copy.setPartypic(c.getPartypic());
+        copy.setCandidatepic(c.getCandiatepic());
+        copy.setCandidateImagePath(c.getCandidateImagePath());
+        copy.setVoteCount(voteCount);
+        return copy;
+    }
+}
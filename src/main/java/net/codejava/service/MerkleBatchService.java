@@ -0,0 +1,292 @@
+package net.codejava.service;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import net.codejava.helper.MerkleTree;
+import net.codejava.helper.SHA256;
+import net.codejava.model.VoteBatch;
+import net.codejava.model.Votedata;
+import net.codejava.repository.VoteBatchRepo;
+import net.codejava.repository.VoteRepo;
+
+/**
+ * Optional Merkle batching of stored votes (vote.merkle.enabled). Votes are
+ * collected in sequence order and sealed into a VoteBatch once batch-size
+ * votes are waiting or the oldest one has waited max-delay-ms. A receipt can
+ * then be proven with log2(batch-size) sibling hashes plus the batch chain,
+ * instead of walking every vote.
+ *
+ * Stored votes are only handed over here; all sealing happens on the seal
+ * thread, so it never adds latency or failures to the vote write path.
+ */
+@Service
+public class MerkleBatchService {
+
+    @Autowired
+    private VoteBatchRepo voteBatchRepo;
+
+    @Autowired
+    private VoteRepo voterepo;
+
+    @Autowired
+    private VoteBatchWriter voteBatchWriter;
+
+    @Autowired
+    private VoteReceiptService voteReceiptService;
+
+    @Value("${vote.merkle.enabled:false}")
+    private boolean enabled;
+
+    @Value("${vote.merkle.batch-size:256}")
+    private int batchSize;
+
+    @Value("${vote.merkle.max-delay-ms:2000}")
+    private long maxDelayMs;
+
+    // handed over by the vote write path, taken into pending on the seal thread
+    private final Queue<Votedata> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger incomingCount = new AtomicInteger();
+
+    private final List<Votedata> pending = new ArrayList<>();
+    // set when pending no longer mirrors the unsealed votes; they are read back from votedata
+    private boolean reloadPending;
+    // highest sequence queued or sealed, so votes read back by a reload aren't queued twice
+    private long lastQueued;
+    private long pendingSince;
+    private long nextBatchNumber = 1;
+    private String prevBatchHash = ChainHeadSequencer.GENESIS_HASH;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        recover();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "merkle-batch-seal");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, maxDelayMs / 2);
+        scheduler.scheduleWithFixedDelay(this::sealIfDue, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hands freshly stored votes, in sequence order, to the seal thread for
+     * the next batch, waking it once a full batch is waiting. Never blocks
+     * on sealing.
+     */
+    public void add(List<Votedata> votes) {
+        if (!enabled || votes.isEmpty()) {
+            return;
+        }
+        incoming.addAll(votes);
+        int waiting = incomingCount.addAndGet(votes.size());
+        if (waiting >= batchSize && waiting - votes.size() < batchSize) {
+            scheduler.execute(this::sealIfDue);
+        }
+    }
+
+    public synchronized void reset() {
+        incoming.clear();
+        incomingCount.set(0);
+        pending.clear();
+        reloadPending = false;
+        lastQueued = 0;
+        nextBatchNumber = 1;
+        prevBatchHash = ChainHeadSequencer.GENESIS_HASH;
+        voteBatchRepo.deleteAll();
+    }
+
+    /**
+     * Inclusion proof for the vote with the given receipt, or null if the
+     * vote is unknown or not sealed into a batch yet. The leaf is the block
+     * hash of the vote.
+     */
+    public Map<String, Object> getInclusionProof(String receipt) {
+        Votedata vote = voteReceiptService.resolve(receipt);
+        if (vote == null || vote.getBatchNumber() == null) {
+            return null;
+        }
+        VoteBatch batch = voteBatchRepo.findByBatchNumber(vote.getBatchNumber());
+        if (batch == null) {
+            return null;
+        }
+        int index = batch.getLeaves().indexOf(vote.getCurrhash());
+        if (index < 0) {
+            return null;
+        }
+        List<MerkleTree.ProofStep> proof = MerkleTree.proof(batch.getLeaves(), index);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("receipt", receipt);
+        result.put("blockHash", vote.getCurrhash());
+        result.put("batchNumber", batch.getBatchNumber());
+        result.put("leafIndex", index);
+        result.put("merkleRoot", batch.getMerkleRoot());
+        result.put("prevBatchHash", batch.getPrevBatchHash());
+        result.put("batchHash", batch.getBatchHash());
+        result.put("proof", proof);
+        result.put("valid", MerkleTree.verify(vote.getCurrhash(), proof, batch.getMerkleRoot()));
+        return result;
+    }
+
+    /**
+     * Takes the handed over votes and seals every full batch, then the rest
+     * once the oldest has waited max-delay-ms. Failures are retried on the
+     * next tick. While sealing keeps failing, at most two batches are held;
+     * the rest are read back from votedata once it works again.
+     */
+    private synchronized void sealIfDue() {
+        if (reloadPending) {
+            // all of them are stored, so the reload reads them back
+            drainIncoming(false);
+            recover();
+            return;
+        }
+        drainIncoming(true);
+        try {
+            while (pending.size() >= batchSize) {
+                seal(batchSize);
+            }
+            if (!pending.isEmpty() && System.currentTimeMillis() - pendingSince >= maxDelayMs) {
+                seal(pending.size());
+            }
+        } catch (Exception e) {
+            System.err.println("[ERROR] Failed to seal Merkle batch " + nextBatchNumber + ": " + e.getMessage());
+            if (pending.size() >= 2 * batchSize) {
+                pending.clear();
+                reloadPending = true;
+            }
+        }
+    }
+
+    // caller holds the lock
+    private void drainIncoming(boolean keep) {
+        Votedata vote;
+        while ((vote = incoming.poll()) != null) {
+            incomingCount.decrementAndGet();
+            if (!keep || vote.getSequence() <= lastQueued) {
+                continue;
+            }
+            if (pending.isEmpty()) {
+                pendingSince = System.currentTimeMillis();
+            }
+            pending.add(vote);
+            lastQueued = vote.getSequence();
+        }
+    }
+
+    /**
+     * Seals the first count pending votes into the next batch. Safe to repeat
+     * after a failure: the votes are stamped first, which only overwrites the
+     * same batch number, and the batch is then written over any earlier copy
+     * with its number.
+     */
+    private void seal(int count) throws NoSuchAlgorithmException {
+        List<Votedata> votes = pending.subList(0, count);
+        List<String> leaves = new ArrayList<>(count);
+        for (Votedata vote : votes) {
+            leaves.add(vote.getCurrhash());
+        }
+        String root = MerkleTree.root(leaves);
+
+        VoteBatch batch = new VoteBatch();
+        batch.setBatchNumber(nextBatchNumber);
+        batch.setMerkleRoot(root);
+        batch.setPrevBatchHash(prevBatchHash);
+        batch.setBatchHash(SHA256.getSHA(new String[] { root }, prevBatchHash));
+        batch.setFirstSequence(votes.get(0).getSequence());
+        batch.setLastSequence(votes.get(count - 1).getSequence());
+        batch.setLeaves(leaves);
+        batch.setDate(new Date());
+        voteBatchWriter.assignBatch(batch.getFirstSequence(), batch.getLastSequence(), batch.getBatchNumber());
+        VoteBatch earlier = voteBatchRepo.findByBatchNumber(batch.getBatchNumber());
+        if (earlier != null) {
+            batch.setId(earlier.getId());
+        }
+        voteBatchRepo.save(batch);
+
+        votes.clear();
+        prevBatchHash = batch.getBatchHash();
+        nextBatchNumber++;
+        pendingSince = System.currentTimeMillis();
+        System.out.println("[INFO] Sealed Merkle batch " + batch.getBatchNumber() + " with " + count + " votes, root " + root);
+    }
+
+    /**
+     * Picks up after the last stored batch: the unsealed votes are read back
+     * one batch at a time and sealed as they fill up, so a long backlog never
+     * has to fit in memory at once.
+     */
+    private synchronized void recover() {
+        try {
+            pending.clear();
+            long lastSequence = 0;
+            VoteBatch last = voteBatchRepo.findTopByOrderByBatchNumberDesc();
+            if (last != null) {
+                nextBatchNumber = last.getBatchNumber() + 1;
+                prevBatchHash = last.getBatchHash();
+                lastSequence = last.getLastSequence();
+            }
+            lastQueued = Math.max(lastQueued, lastSequence);
+            pendingSince = System.currentTimeMillis();
+            long sealedBefore = nextBatchNumber;
+            while (true) {
+                List<Votedata> page = voterepo.findBySequenceGreaterThanOrderBySequenceAsc(lastSequence,
+                        PageRequest.of(0, batchSize));
+                pending.addAll(page);
+                if (!page.isEmpty()) {
+                    lastQueued = Math.max(lastQueued, page.get(page.size() - 1).getSequence());
+                }
+                while (pending.size() >= batchSize) {
+                    seal(batchSize);
+                }
+                if (page.size() < batchSize) {
+                    break;
+                }
+                lastSequence = page.get(page.size() - 1).getSequence();
+            }
+            reloadPending = false;
+            System.out.println("[INIT] Merkle batching resumes at batch " + nextBatchNumber + " with " + pending.size()
+                    + " unsealed votes, " + (nextBatchNumber - sealedBefore) + " batches sealed from the backlog");
+        } catch (Exception e) {
+            // retried from the seal tick
+            pending.clear();
+            reloadPending = true;
+            System.err.println("[ERROR] Failed to recover Merkle batch state: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package net.codejava.service;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import net.codejava.model.Votedata;
+
+/**
+ * Bulk writes for votedata, so a batch of votes costs one Mongo round trip
+ * instead of one per vote.
+ */
+@Service
+public class VoteBatchWriter {
+
+    private static final String SEQUENCE_INDEX = "sequence_unique";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Makes sequence unique, so two blocks can never claim the same place in
+     * the chain. Partial, since votes stored before sequencing all have 0.
+     * Replaces the plain index older versions created on the same key.
+     */
+    @PostConstruct
+    public void ensureIndexes() {
+        IndexOperations indexes = mongoTemplate.indexOps(Votedata.class);
+        for (IndexInfo index : indexes.getIndexInfo()) {
+            if (!SEQUENCE_INDEX.equals(index.getName()) && index.isIndexForFields(Collections.singletonList("sequence"))) {
+                indexes.dropIndex(index.getName());
+            }
+        }
+        indexes.ensureIndex(new Index().on("sequence", Sort.Direction.ASC).unique().named(SEQUENCE_INDEX)
+                .partial(PartialIndexFilter.of(Criteria.where("sequence").gt(0))));
+    }
+
+    /**
+     * Inserts all votes with a single ordered insertMany. Ids are populated
+     * on the given objects once this returns. On failure the votes before the
+     * failing one may already be stored.
+     */
+    public void insertAll(List<Votedata> votes) {
+        if (votes.isEmpty()) {
+            return;
+        }
+        mongoTemplate.insertAll(votes);
+    }
+
+    /**
+     * Writes the chain status, transaction hash and outbox bookkeeping of each
+     * outcome back in one unordered bulk update, at most one outcome per vote.
+     */
+    public void updateChainStatus(List<ChainOutcome> outcomes) {
+        if (outcomes.isEmpty()) {
+            return;
+        }
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Votedata.class);
+        for (ChainOutcome outcome : outcomes) {
+            ops.updateOne(
+                Query.query(Criteria.where("_id").is(outcome.getId())),
+                new Update().set("chainStatus", outcome.getChainStatus()).set("txhash", outcome.getTxhash())
+                    .set("chainAttempts", outcome.getChainAttempts())
+                    .set("nextChainAttempt", outcome.getNextChainAttempt())
+                    .set("chainLeaseUntil", outcome.getChainLeaseUntil()));
+        }
+        ops.execute();
+    }
+
+    /**
+     * Takes up to limit outbox votes that are due, oldest first, and marks
+     * them SUBMITTED with a lease until leaseUntil and one more attempt.
+     * Due means PENDING or DEFERRED with no retry scheduled later than now,
+     * or SUBMITTED with a lapsed lease. Assumes a single relay.
+     */
+    public List<Votedata> claimOutbox(Date now, Date leaseUntil, int limit) {
+        Criteria waiting = new Criteria().andOperator(
+            Criteria.where("chainStatus").in(Votedata.CHAIN_PENDING, Votedata.CHAIN_DEFERRED),
+            new Criteria().orOperator(
+                Criteria.where("nextChainAttempt").lte(now),
+                Criteria.where("nextChainAttempt").is(null)));
+        Criteria lapsed = Criteria.where("chainStatus").is(Votedata.CHAIN_SUBMITTED).and("chainLeaseUntil").lt(now);
+        Query query = Query.query(new Criteria().orOperator(waiting, lapsed))
+                .with(Sort.by(Sort.Direction.ASC, "sequence"))
+                .limit(limit);
+        List<Votedata> votes = mongoTemplate.find(query, Votedata.class);
+        if (votes.isEmpty()) {
+            return votes;
+        }
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Votedata.class);
+        for (Votedata vote : votes) {
+            vote.setChainStatus(Votedata.CHAIN_SUBMITTED);
+            vote.setChainLeaseUntil(leaseUntil);
+            vote.setChainAttempts(vote.getChainAttempts() + 1);
+            ops.updateOne(
+                Query.query(Criteria.where("_id").is(vote.getId())),
+                new Update().set("chainStatus", Votedata.CHAIN_SUBMITTED).set("chainLeaseUntil", leaseUntil)
+                    .inc("chainAttempts", 1));
+        }
+        ops.execute();
+        return votes;
+    }
+
+    /**
+     * Votes still waiting in the outbox to be sent.
+     */
+    public long countOutbox() {
+        return mongoTemplate.count(
+            Query.query(Criteria.where("chainStatus").in(Votedata.CHAIN_PENDING, Votedata.CHAIN_DEFERRED)),
+            Votedata.class);
+    }
+
+    /**
+     * Stamps every vote in the sequence range with its Merkle batch number.
+     */
+    public void assignBatch(long firstSequence, long lastSequence, long batchNumber) {
+        mongoTemplate.updateMulti(
+            Query.query(Criteria.where("sequence").gte(firstSequence).lte(lastSequence)),
+            new Update().set("batchNumber", batchNumber),
+            Votedata.class);
+    }
+
+    /**
+     * The outbox fields of one vote as the relay decided them, detached from
+     * the entity so it can be handed between threads as is.
+     */
+    public static final class ChainOutcome {
+        private final String id;
+        private final String chainStatus;
+        private final String txhash;
+        private final int chainAttempts;
+        private final Date nextChainAttempt;
+        private final Date chainLeaseUntil;
+
+        public ChainOutcome(String id, String chainStatus, String txhash, int chainAttempts,
+                Date nextChainAttempt, Date chainLeaseUntil) {
+            this.id = id;
+            this.chainStatus = chainStatus;
+            this.txhash = txhash;
+            this.chainAttempts = chainAttempts;
+            this.nextChainAttempt = nextChainAttempt;
+            this.chainLeaseUntil = chainLeaseUntil;
+        }
+
+        public String getId() { return id; }
+        public String getChainStatus() { return chainStatus; }
+        public String getTxhash() { return txhash; }
+        public int getChainAttempts() { return chainAttempts; }
+        public Date getNextChainAttempt() { return nextChainAttempt; }
+        public Date getChainLeaseUntil() { return chainLeaseUntil; }
+    }
+}
@@ -0,0 +1,294 @@
+package net.codejava.service;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import net.codejava.model.Votedata;
+import net.codejava.smartcontract.ChainCircuitBreaker;
+import net.codejava.smartcontract.ReceiptTracker;
+import net.codejava.smartcontract.VoteBatcher;
+import net.codejava.smartcontract.VotingContractService;
+
+/**
+ * Sends votes from the outbox to the chain. A vote enters the outbox when it
+ * is stored as PENDING, in the same document write, so a vote in Mongo is
+ * never lost on the way to the chain even across a crash.
+ *
+ * Delivery is at least once: a claimed vote is leased, and if no outcome is
+ * written before the lease runs out it is sent again. The vote's chainKey is
+ * its voteBatch commitment, which the contract counts only once, and a vote
+ * that already has a txhash is tracked again rather than resent while the
+ * node still knows that transaction. Failed sends are retried with backoff
+ * up to max-attempts.
+ *
+ * Receipt and batch callbacks only hand their result over; the outcome is
+ * decided on the relay thread and written back in bulk.
+ */
+@Service
+public class VoteOutboxRelay {
+
+    @Autowired
+    private VoteBatchWriter voteBatchWriter;
+
+    @Autowired
+    private VotingContractService votingContractService;
+
+    @Autowired
+    private ReceiptTracker receiptTracker;
+
+    @Autowired
+    private VoteBatcher voteBatcher;
+
+    @Autowired
+    private ChainCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private CandidateChainIdCache candidateChainIdCache;
+
+    @Value("${vote.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${vote.outbox.poll-interval-ms:500}")
+    private long pollIntervalMs;
+
+    // longer than the receipt timeout, so a vote is only resent once its receipt was given up on
+    @Value("${vote.outbox.lease-ms:600000}")
+    private long leaseMs;
+
+    @Value("${vote.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${vote.outbox.retry-backoff-ms:2000}")
+    private long retryBackoffMs;
+
+    // results handed over by receipt tracker and batcher threads, settled on the relay thread
+    private final Queue<Delivery> delivered = new ConcurrentLinkedQueue<>();
+    // decided outcomes not yet written back, touched by the relay thread only
+    private final Map<String, VoteBatchWriter.ChainOutcome> outcomes = new LinkedHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+
+    private long rateWindowStart = System.currentTimeMillis();
+    private long rateWindowConfirmed;
+    private volatile double drainRate;
+
+    private ScheduledExecutorService relay;
+
+    @PostConstruct
+    public void start() {
+        relay = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vote-outbox-relay");
+            t.setDaemon(true);
+            return t;
+        });
+        // the first run also picks up whatever a previous process left behind
+        relay.scheduleWithFixedDelay(this::relay, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        System.out.println("[INIT] Vote outbox relay started, batch size " + batchSize + ", lease " + leaseMs + "ms");
+    }
+
+    @PreDestroy
+    public void stop() {
+        relay.shutdownNow();
+    }
+
+    /**
+     * Asks for a relay run now instead of at the next poll, called after new
+     * votes are stored.
+     */
+    public void wakeUp() {
+        relay.execute(this::relay);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("depth", voteBatchWriter.countOutbox());
+        stats.put("inFlight", inFlight.get());
+        stats.put("sent", sent.get());
+        stats.put("confirmed", confirmed.get());
+        stats.put("failed", failed.get());
+        stats.put("retried", retried.get());
+        stats.put("drainRatePerSec", Math.round(drainRate * 10) / 10.0);
+        return stats;
+    }
+
+    private void relay() {
+        try {
+            settleDelivered();
+            flushOutcomes();
+            updateDrainRate();
+            if (!circuitBreaker.isCallPermitted()) {
+                return;
+            }
+            Date now = new Date();
+            List<Votedata> due = voteBatchWriter.claimOutbox(now, new Date(now.getTime() + leaseMs), batchSize);
+            for (Votedata vote : due) {
+                send(vote);
+            }
+            flushOutcomes();
+            if (due.size() == batchSize) {
+                // more are waiting, don't sit out the poll interval
+                relay.execute(this::relay);
+            }
+        } catch (Exception e) {
+            System.err.println("[ERROR] Vote outbox relay failed: " + e.getMessage());
+        }
+    }
+
+    private void send(Votedata vote) {
+        inFlight.incrementAndGet();
+        try {
+            Long chainId = candidateChainIdCache.resolve(vote.getCandidate());
+            if (chainId == null) {
+                // the candidate may not be mined or indexed yet
+                throw new CandidateChainIdCache.UnresolvedException("No active on-chain candidate for " + vote.getCandidate());
+            }
+            BigInteger candidateId = BigInteger.valueOf(chainId);
+            if (voteBatcher.isEnabled()) {
+                // a repeated commitment is skipped by the contract, so resending is safe
+                String commitment = vote.getChainKey() != null ? vote.getChainKey()
+                        : voteBatcher.commitmentOf(vote.getUsername());
+                voteBatcher.enqueue(commitment, candidateId)
+                        .whenComplete((receipt, error) -> delivered.add(new Delivery(vote, null, receipt, error)));
+            } else if (vote.getTxhash() != null && votingContractService.isTransactionKnown(vote.getTxhash())) {
+                // sent before and it may still be mined, so wait for it instead of sending a second vote
+                String txHash = vote.getTxhash();
+                receiptTracker.track(txHash)
+                        .whenComplete((receipt, error) -> delivered.add(new Delivery(vote, txHash, receipt, error)));
+            } else {
+                String txHash = votingContractService.submitVote(candidateId);
+                // recorded right away, so a resend after a crash finds it
+                record(vote, Votedata.CHAIN_SUBMITTED, txHash, vote.getChainAttempts(), null, vote.getChainLeaseUntil());
+                System.out.println("[BLOCKCHAIN] Vote transaction hash: " + txHash);
+                receiptTracker.track(txHash)
+                        .whenComplete((receipt, error) -> delivered.add(new Delivery(vote, txHash, receipt, error)));
+            }
+            sent.incrementAndGet();
+        } catch (Exception e) {
+            settle(new Delivery(vote, null, null, e));
+        }
+    }
+
+    private void settleDelivered() {
+        Delivery delivery;
+        while ((delivery = delivered.poll()) != null) {
+            settle(delivery);
+        }
+    }
+
+    /**
+     * Decides the outcome of one send. Runs on the relay thread only, so the
+     * check whether an earlier delivery already landed never holds up the
+     * receipt tracker or batcher.
+     */
+    private void settle(Delivery delivery) {
+        inFlight.decrementAndGet();
+        Votedata vote = delivery.vote;
+        Throwable error = delivery.error;
+        String txHash = delivery.txHash != null ? delivery.txHash : vote.getTxhash();
+        if (error instanceof ChainCircuitBreaker.OpenException) {
+            // refused before it was sent, so it doesn't count as an attempt
+            record(vote, Votedata.CHAIN_DEFERRED, txHash, vote.getChainAttempts() - 1, null, null);
+        } else if (error instanceof CandidateChainIdCache.UnresolvedException) {
+            // not sent either; waits for the indexer without using up its attempts
+            record(vote, Votedata.CHAIN_DEFERRED, txHash, vote.getChainAttempts() - 1,
+                    new Date(System.currentTimeMillis() + retryBackoffMs), null);
+        } else if (error == null) {
+            TransactionReceipt receipt = delivery.receipt;
+            System.out.println("[BLOCKCHAIN] Transaction " + receipt.getTransactionHash() + " status: " + receipt.getStatus());
+            // a revert is final, sending the same call again would revert again
+            record(vote, receipt.isStatusOK() ? Votedata.CHAIN_CONFIRMED : Votedata.CHAIN_FAILED,
+                    receipt.getTransactionHash(), vote.getChainAttempts(), null, null);
+            (receipt.isStatusOK() ? confirmed : failed).incrementAndGet();
+        } else if (isCountedOnChain(vote)) {
+            record(vote, Votedata.CHAIN_CONFIRMED, txHash, vote.getChainAttempts(), null, null);
+            confirmed.incrementAndGet();
+        } else if (vote.getChainAttempts() >= maxAttempts) {
+            System.err.println("[ERROR] Vote of " + vote.getUsername() + " not delivered after " + maxAttempts
+                    + " attempts: " + error.getMessage());
+            record(vote, Votedata.CHAIN_FAILED, txHash, vote.getChainAttempts(), null, null);
+            failed.incrementAndGet();
+        } else {
+            long backoff = retryBackoffMs << Math.min(vote.getChainAttempts() - 1, 10);
+            // the hash is kept: the next attempt waits for that transaction if the node still has it
+            record(vote, Votedata.CHAIN_PENDING, txHash, vote.getChainAttempts(),
+                    new Date(System.currentTimeMillis() + backoff), null);
+            retried.incrementAndGet();
+        }
+    }
+
+    // an earlier delivery may have landed even though this one failed
+    private boolean isCountedOnChain(Votedata vote) {
+        if (!voteBatcher.isEnabled() || vote.getChainKey() == null) {
+            return false;
+        }
+        try {
+            return votingContractService.isCommitmentCounted(vote.getChainKey());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // the latest outcome per vote replaces any earlier one not yet written
+    private void record(Votedata vote, String status, String txHash, int attempts, Date nextAttempt, Date leaseUntil) {
+        outcomes.put(vote.getId(), new VoteBatchWriter.ChainOutcome(vote.getId(), status, txHash, attempts,
+                nextAttempt, leaseUntil));
+    }
+
+    private void flushOutcomes() {
+        if (outcomes.isEmpty()) {
+            return;
+        }
+        voteBatchWriter.updateChainStatus(new ArrayList<>(outcomes.values()));
+        outcomes.clear();
+    }
+
+    private void updateDrainRate() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - rateWindowStart;
+        if (elapsed >= 10000) {
+            long total = confirmed.get();
+            drainRate = (total - rateWindowConfirmed) * 1000.0 / elapsed;
+            rateWindowConfirmed = total;
+            rateWindowStart = now;
+        }
+    }
+
+    // what came back for one sent vote; the vote itself is only read on the relay thread
+    private static final class Delivery {
+        final Votedata vote;
+        final String txHash;
+        final TransactionReceipt receipt;
+        final Throwable error;
+
+        Delivery(Votedata vote, String txHash, TransactionReceipt receipt, Throwable error) {
+            this.vote = vote;
+            this.txHash = txHash;
+            this.receipt = receipt;
+            this.error = error;
+        }
+    }
+}
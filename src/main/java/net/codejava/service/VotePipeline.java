@@ -0,0 +1,392 @@
+package net.codejava.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import net.codejava.model.Votedata;
+import net.codejava.repository.CandidateRepo;
+import net.codejava.smartcontract.VoteBatcher;
+
+/**
+ * Staged vote ingestion: accept -> validate -> persist. Each stage runs on its
+ * own worker thread and hands work to the next one through a bounded queue.
+ * Votes are stored as PENDING, which puts them in the outbox, and voters are
+ * released right away; VoteOutboxRelay takes them to the chain from there, so
+ * chain latency never reaches the voter.
+ */
+@Service
+public class VotePipeline {
+
+    @Autowired
+    private CandidateRepo candidaterepo;
+
+    @Autowired
+    private CandidateService candidateService;
+
+    @Autowired
+    private LiveTallyService liveTallyService;
+
+    @Autowired
+    private ChainHeadSequencer chainHeadSequencer;
+
+    @Autowired
+    private VoteBatchWriter voteBatchWriter;
+
+    @Autowired
+    private MerkleBatchService merkleBatchService;
+
+    @Autowired
+    private VoteReceiptService voteReceiptService;
+
+    @Autowired
+    private VoterRegistry voterRegistry;
+
+    @Autowired
+    private VoteOutboxRelay voteOutboxRelay;
+
+    @Autowired
+    private VoteBatcher voteBatcher;
+
+    @Value("${vote.pipeline.queue-capacity:1024}")
+    private int queueCapacity;
+
+    // group commit: flush when this many votes are waiting or the window closes
+    @Value("${vote.pipeline.batch-size:100}")
+    private int batchSize;
+
+    @Value("${vote.pipeline.batch-window-ms:5}")
+    private long batchWindowMs;
+
+    // how soon candidate vote counts that failed to update are rebuilt when no votes arrive
+    @Value("${vote.pipeline.count-retry-ms:5000}")
+    private long countRetryMs;
+
+    private BlockingQueue<VoteTask> validateQueue;
+    private BlockingQueue<VoteTask> persistQueue;
+
+    // votes accepted but not yet persisted by username, guards against double submits
+    private final Map<String, VoteTask> inFlight = new ConcurrentHashMap<>();
+
+    // set when a $inc of candidate vote counts failed; the persist thread rebuilds them from votedata
+    private final AtomicBoolean countsStale = new AtomicBoolean();
+
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        validateQueue = new ArrayBlockingQueue<>(queueCapacity);
+        persistQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "vote-pipeline-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+
+        workers.submit(() -> runStage("validate", validateQueue, this::validate));
+        workers.submit(() -> runBatchStage("persist", persistQueue, this::persist));
+        System.out.println("[INIT] Vote pipeline started with queue capacity " + queueCapacity
+                + ", batch size " + batchSize + ", batch window " + batchWindowMs + "ms");
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.shutdownNow();
+    }
+
+    /**
+     * Accept stage. Runs on the request thread and only enqueues; the returned
+     * future completes once the vote has been persisted.
+     */
+    public CompletableFuture<Votedata> submit(String candidateName, String username, String name) {
+        CompletableFuture<Votedata> accepted = new CompletableFuture<>();
+        VoteTask task = new VoteTask(candidateName, username, name, accepted);
+        if (inFlight.putIfAbsent(username, task) != null) {
+            accepted.completeExceptionally(new IllegalStateException("Your vote is already being processed"));
+            return accepted;
+        }
+        if (!validateQueue.offer(task)) {
+            inFlight.remove(username);
+            accepted.completeExceptionally(new IllegalStateException("Voting is busy right now, please try again"));
+        }
+        return accepted;
+    }
+
+    /**
+     * Withdraws a vote whose voter stopped waiting for it. Only possible while
+     * it is still queued; returns false once it is being stored, and then its
+     * outcome has to be awaited, so a stored vote is never reported as failed.
+     */
+    public boolean cancel(String username) {
+        VoteTask task = inFlight.get(username);
+        if (task == null || !task.claimed.compareAndSet(false, true)) {
+            return false;
+        }
+        inFlight.remove(username, task);
+        task.accepted.completeExceptionally(new IllegalStateException("Vote acceptance timed out, please try again"));
+        return true;
+    }
+
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        depths.put("validate", validateQueue.size());
+        depths.put("persist", persistQueue.size());
+        return depths;
+    }
+
+    private void validate(VoteTask task) throws InterruptedException {
+        if (task.accepted.isDone()) {
+            // cancelled while queued
+            return;
+        }
+        if (voterRegistry.hasVoted(task.username)) {
+            throw new IllegalStateException("You have already voted");
+        }
+        if (candidaterepo.findByParty(task.candidateName) == null) {
+            throw new IllegalStateException("Invalid candidate: " + task.candidateName);
+        }
+        persistQueue.put(task);
+    }
+
+    /**
+     * Group commit: every vote collected in the batch window is linked onto
+     * the chain and stored with one bulk insert, and the waiting voters are
+     * released as soon as that insert succeeds. The bookkeeping after it can
+     * fail and be repaired on its own without failing stored votes.
+     */
+    private void persist(List<VoteTask> batch) {
+        List<Votedata> votes = new ArrayList<>(batch.size());
+        List<VoteTask> linked = new ArrayList<>(batch.size());
+        for (VoteTask task : batch) {
+            if (!task.claimed.compareAndSet(false, true)) {
+                // cancelled while queued
+                continue;
+            }
+            String[] data = { task.username, task.name, task.candidateName };
+            Votedata vote = new Votedata();
+            vote.setUsername(task.username);
+            vote.setCandidate(task.candidateName);
+            vote.setReceipt(voteReceiptService.newReceipt());
+            vote.setDate(new Date());
+            // into the outbox with the same write
+            vote.setChainStatus(Votedata.CHAIN_PENDING);
+            vote.setChainKey(voteBatcher.commitmentOf(task.username));
+            try {
+                chainHeadSequencer.append(data, vote);
+            } catch (RuntimeException e) {
+                // not linked, so the rest of the batch carries on without it
+                inFlight.remove(task.username);
+                task.accepted.completeExceptionally(e);
+                continue;
+            }
+            task.vote = vote;
+            votes.add(vote);
+            linked.add(task);
+        }
+        if (linked.isEmpty()) {
+            return;
+        }
+        List<VoteTask> stored = linked;
+        try {
+            voteBatchWriter.insertAll(votes);
+        } catch (RuntimeException e) {
+            stored = storedPart(linked, e);
+            if (stored.isEmpty()) {
+                throw e;
+            }
+            votes = new ArrayList<>(stored.size());
+            for (VoteTask task : stored) {
+                votes.add(task.vote);
+            }
+        }
+        Map<String, Integer> deltas = new HashMap<>();
+        for (VoteTask task : stored) {
+            voterRegistry.markVoted(task.username);
+            deltas.merge(task.candidateName, 1, Integer::sum);
+            inFlight.remove(task.username);
+            task.accepted.complete(task.vote);
+        }
+        System.out.println("[INFO] Vote batch of " + votes.size() + " saved");
+        voteOutboxRelay.wakeUp();
+
+        // the live tally reconciles itself against votedata, and unsealed votes are reloaded by the Merkle batcher
+        liveTallyService.record(deltas);
+        try {
+            merkleBatchService.add(votes);
+        } catch (RuntimeException e) {
+            System.err.println("[ERROR] Could not queue stored votes for Merkle batching: " + e.getMessage());
+        }
+        if (!countsStale.get()) {
+            try {
+                candidateService.incrementVoteCounts(deltas);
+            } catch (RuntimeException e) {
+                // part of an unordered bulk $inc may have landed, so rebuild rather than repeat it
+                System.err.println("[ERROR] Candidate vote counts not updated, rebuilding them: " + e.getMessage());
+                countsStale.set(true);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds candidate vote counts from votedata after an update of them
+     * failed. Runs on the persist thread, the only one that changes counts,
+     * so no $inc can interleave with it.
+     */
+    private void rebuildCountsIfStale() {
+        if (!countsStale.get()) {
+            return;
+        }
+        try {
+            candidateService.setVoteCounts(liveTallyService.countStoredVotes());
+            countsStale.set(false);
+            System.out.println("[INFO] Candidate vote counts rebuilt from votedata");
+        } catch (RuntimeException e) {
+            System.err.println("[ERROR] Candidate vote count rebuild failed, retrying: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Works out how far a failed insert got. The insert is ordered, so the
+     * votes up to the last stored block were written and the rest were not;
+     * the head is resynced from that block and the rest are failed. If Mongo
+     * can't even be read, nothing is known and the whole batch is failed.
+     * Failed voters stay in the voter filter, so a retry checks Mongo for a
+     * vote that may have landed after all.
+     */
+    private List<VoteTask> storedPart(List<VoteTask> batch, RuntimeException failure) {
+        long storedTip;
+        try {
+            chainHeadSequencer.resync();
+            storedTip = chainHeadSequencer.getTipSequence();
+        } catch (RuntimeException e) {
+            System.err.println("[ERROR] Could not read the chain head back after a failed insert: " + e.getMessage());
+            for (VoteTask task : batch) {
+                voterRegistry.markMaybeVoted(task.username);
+            }
+            return Collections.emptyList();
+        }
+        List<VoteTask> stored = new ArrayList<>();
+        for (VoteTask task : batch) {
+            if (task.vote.getSequence() <= storedTip) {
+                stored.add(task);
+            } else {
+                voterRegistry.markMaybeVoted(task.username);
+                inFlight.remove(task.username);
+                task.accepted.completeExceptionally(failure);
+            }
+        }
+        System.err.println("[ERROR] Vote batch insert failed after " + stored.size() + " of " + batch.size()
+                + " votes: " + failure.getMessage());
+        return stored;
+    }
+
+    private void runStage(String stageName, BlockingQueue<VoteTask> queue, Stage stage) {
+        while (running) {
+            VoteTask task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                stage.process(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("[ERROR] Vote pipeline " + stageName + " stage failed for " + task.username + ": " + e.getMessage());
+                inFlight.remove(task.username);
+                task.accepted.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Like {@link #runStage} but hands the stage everything that arrives within
+     * the batch window, up to the batch size.
+     */
+    private void runBatchStage(String stageName, BlockingQueue<VoteTask> queue, BatchStage stage) {
+        List<VoteTask> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                rebuildCountsIfStale();
+                VoteTask first = queue.poll(countRetryMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    VoteTask next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                stage.process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("[ERROR] Vote pipeline " + stageName + " stage failed for a batch of " + batch.size() + ": " + e.getMessage());
+                for (VoteTask task : batch) {
+                    inFlight.remove(task.username);
+                    task.accepted.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private interface Stage {
+        void process(VoteTask task) throws Exception;
+    }
+
+    private interface BatchStage {
+        void process(List<VoteTask> batch) throws Exception;
+    }
+
+    private static class VoteTask {
+        final String candidateName;
+        final String username;
+        final String name;
+        final CompletableFuture<Votedata> accepted;
+        // taken by the persist stage before linking, or by cancel; whichever is first wins
+        final AtomicBoolean claimed = new AtomicBoolean();
+        Votedata vote;
+
+        VoteTask(String candidateName, String username, String name, CompletableFuture<Votedata> accepted) {
+            this.candidateName = candidateName;
+            this.username = username;
+            this.name = name;
+            this.accepted = accepted;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package net.codejava.service;
+
+import java.security.SecureRandom;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import net.codejava.helper.HashingCore;
+import net.codejava.model.Votedata;
+import net.codejava.repository.VoteRepo;
+
+/**
+ * Voter-facing receipts. A receipt is a random token stored on the vote under
+ * a unique index, so it never changes when the block or transaction hash of
+ * the vote does, and resolving one is a single indexed lookup.
+ */
+@Service
+public class VoteReceiptService {
+
+    @Autowired
+    private VoteRepo voterepo;
+
+    private final SecureRandom random = new SecureRandom();
+
+    public String newReceipt() {
+        byte[] token = new byte[32];
+        random.nextBytes(token);
+        return HashingCore.toHex(token);
+    }
+
+    /**
+     * The vote a receipt belongs to, or null. Receipts mailed before votes
+     * carried their own were the block hash, so those still resolve.
+     */
+    public Votedata resolve(String receipt) {
+        if (receipt == null || receipt.isEmpty()) {
+            return null;
+        }
+        Votedata vote = voterepo.findByReceipt(receipt);
+        if (vote == null) {
+            vote = voterepo.findByCurrhash(receipt);
+        }
+        return vote;
+    }
+
+    /**
+     * The receipt to hand to the voter for this vote.
+     */
+    public static String receiptOf(Votedata vote) {
+        return vote.getReceipt() != null ? vote.getReceipt() : vote.getCurrhash();
+    }
+}
@@ -6,17 +6,20 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import javax.annotation.PostConstruct;
 import org.springframework.stereotype.Service;
 
-import net.codejava.model.Block;
 import net.codejava.model.Votedata;
 import net.codejava.repository.VoteRepo;
 import net.codejava.smartcontract.VoteSmartContract;
-import net.codejava.model.Candidate;
 import net.codejava.model.User;
 import net.codejava.repository.UserRepo;
 
@@ -31,13 +34,31 @@ public class VoteService {
     private VoteSmartContract smartcontract;
 
     @Autowired
-    private net.codejava.repository.CandidateRepo candidaterepo;
+    private CandidateService candidateService;
+
+    @Autowired
+    private LiveTallyService liveTallyService;
 
     @Autowired
     private UserRepo userRepo;
 
-        @Autowired
-        private net.codejava.smartcontract.VotingContractService votingContractService;
+    @Autowired
+    private VotePipeline votePipeline;
+
+    @Autowired
+    private ChainHeadSequencer chainHeadSequencer;
+
+    @Autowired
+    private MerkleBatchService merkleBatchService;
+
+    @Autowired
+    private ChainCheckpointService chainCheckpointService;
+
+    @Autowired
+    private VoterRegistry voterRegistry;
+
+    @Value("${vote.pipeline.accept-timeout-ms:10000}")
+    private long acceptTimeoutMs;
 
         @PostConstruct
         private void initVotingStateFromAdmin() {
@@ -69,15 +90,16 @@ public class VoteService {
     public void resetVotingSystem() {
         // Clear all votes
         voterepo.deleteAll();
+        voterRegistry.reset();
+        chainHeadSequencer.reset();
+        merkleBatchService.reset();
+        chainCheckpointService.reset();
         // Reset voting status
         isVotingActive.set(false);
         
         // Reset all candidate vote counts
-        List<Candidate> candidates = candidaterepo.findAll();
-        for (Candidate candidate : candidates) {
-            candidate.setVoteCount(0);
-            candidaterepo.save(candidate);
-        }
+        candidateService.resetVoteCounts();
+        liveTallyService.reset();
 
         // Reset voted status for all users
         List<User> users = userRepo.findAll();
@@ -90,17 +112,9 @@ public class VoteService {
     public Map<String, Object> getVotingStatistics() {
         Map<String, Object> stats = new HashMap<>();
         
-        // Get votes from candidates
-        List<Candidate> candidates = candidaterepo.findAll();
-        long totalVotes = 0;
-        Map<String, Long> votesByCandidate = new HashMap<>();
-        
-        // Calculate total votes and votes per candidate
-        for (Candidate candidate : candidates) {
-            long votes = candidate.getVoteCount();
-            totalVotes += votes;
-            votesByCandidate.put(candidate.getParty(), votes);
-        }
+        // Get votes from the live tally
+        long totalVotes = liveTallyService.getTotalVotes();
+        Map<String, Long> votesByCandidate = liveTallyService.snapshot();
         
         stats.put("totalVotes", totalVotes);
         
@@ -129,70 +143,35 @@ public class VoteService {
             throw new IllegalStateException("You have already voted");
         }
 
-        // Check on blockchain if user has already voted
+        // Hand the vote to the pipeline and wait only until it is stored;
+        // the chain submission finishes in the background
+        CompletableFuture<Votedata> accepted = votePipeline.submit(candidateName, adhhar, name);
         try {
-            Boolean hasVoted = votingContractService.hasVoted(adhhar);
-            if (hasVoted != null && hasVoted) {
-                throw new IllegalStateException("You have already voted (blockchain)");
+            try {
+                accepted.get(acceptTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (votePipeline.cancel(adhhar)) {
+                    throw new RuntimeException("Vote acceptance timed out", e);
+                }
+                // already being stored, so report how that ends instead of a failure that may not be one
+                accepted.get();
             }
-        } catch (Exception e) {
-            System.err.println("[ERROR] Blockchain check failed: " + e.getMessage());
-            throw new RuntimeException("Blockchain check failed: " + e.getMessage());
-        }
-
-        // Prepare vote block
-        Votedata lastEntry = voterepo.findTopByOrderByDateDesc();
-        String[] data = { adhhar, name, candidateName };
-        Block block = (lastEntry == null) ? new Block(data, "0") : new Block(data, lastEntry.getCurrhash());
-
-        Votedata vote = new Votedata();
-        vote.setUsername(adhhar);
-        vote.setCandidate(candidateName);
-        vote.setCurrhash(block.getBlockHash());
-        vote.setPrevhash(block.getPreviousBlockHash());
-        vote.setDate(new Date());
-
-        // Save vote in DB
-        voterepo.save(vote);
-        System.out.println("[INFO] Vote saved for user: " + adhhar + " candidate: " + candidateName);
-
-        // Update candidate vote count
-        Candidate candidate = candidaterepo.findByParty(candidateName);
-        if (candidate != null) {
-            candidate.incrementVoteCount();
-            candidaterepo.save(candidate);
-            System.out.println("[INFO] Candidate " + candidateName + " vote count incremented.");
-        } else {
-            System.err.println("[ERROR] Invalid candidate: " + candidateName);
-            throw new IllegalStateException("Invalid candidate: " + candidateName);
-        }
-
-        // Record vote on blockchain and log transaction hash
-        try {
-            // TODO: Map candidateName to candidateId
-            java.math.BigInteger candidateId = java.math.BigInteger.valueOf(1); // Replace with actual mapping
-            org.web3j.protocol.core.methods.response.TransactionReceipt receipt = votingContractService.vote(candidateId);
-            String txHash = receipt.getTransactionHash();
-            vote.setCurrhash(txHash); // Optionally store txHash in currhash or add a new field for txHash
-            voterepo.save(vote); // Update with txHash
-            System.out.println("[BLOCKCHAIN] Vote transaction hash: " + txHash);
-            System.out.println("[BLOCKCHAIN] Transaction status: " + receipt.getStatus());
-        } catch (Exception e) {
-            // Check if error is "already voted" - log but continue for testing
-            if (e.getMessage().contains("execution reverted: You have already voted")) {
-                System.out.println("[BLOCKCHAIN] User has already voted on-chain - allowing DB update for testing");
-            } else {
-                System.err.println("[ERROR] Blockchain vote failed: " + e.getMessage());
-                throw new RuntimeException("Blockchain vote failed: " + e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new RuntimeException("Vote could not be accepted: " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Vote acceptance interrupted", e);
         }
 
     return true;
     }
 
     public boolean userExists(String username) {
-        Votedata user = voterepo.findByUsername(username);
-        return user != null;
+        return voterRegistry.hasVoted(username);
     }
 
     public int countVotes() {
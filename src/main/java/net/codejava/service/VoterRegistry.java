@@ -0,0 +1,103 @@
+package net.codejava.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import net.codejava.helper.BloomFilter;
+import net.codejava.model.Votedata;
+import net.codejava.repository.VoteRepo;
+
+/**
+ * Answers "has this voter voted" without a round trip for most voters. A
+ * Bloom filter loaded from votedata at startup rules out everyone who has
+ * not voted, an exact set answers for voters already seen, and only a
+ * filter hit that the set cannot confirm goes to Mongo.
+ */
+@Service
+public class VoterRegistry {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private VoteRepo voterepo;
+
+    @Value("${vote.voters.bloom-expected:100000}")
+    private long expectedVoters;
+
+    @Value("${vote.voters.bloom-fpp:0.01}")
+    private double falsePositiveRate;
+
+    private volatile BloomFilter filter;
+    private final Set<String> voted = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void load() {
+        long existing = voterepo.count();
+        BloomFilter loaded = newFilter(existing);
+        Query query = new Query();
+        query.fields().include("username");
+        query.cursorBatchSize(1000);
+        long loadedCount = 0;
+        try (CloseableIterator<Votedata> votes = mongoTemplate.stream(query, Votedata.class)) {
+            while (votes.hasNext()) {
+                String username = votes.next().getUsername();
+                if (username != null) {
+                    loaded.put(username);
+                    loadedCount++;
+                }
+            }
+        }
+        filter = loaded;
+        System.out.println("[INIT] Voter filter loaded with " + loadedCount + " voters, "
+                + loaded.getNumBits() + " bits, " + loaded.getNumHashes() + " hashes");
+    }
+
+    public boolean hasVoted(String username) {
+        if (voted.contains(username)) {
+            return true;
+        }
+        if (!filter.mightContain(username)) {
+            return false;
+        }
+        if (voterepo.findByUsername(username) != null) {
+            voted.add(username);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a vote that has been stored.
+     */
+    public void markVoted(String username) {
+        filter.put(username);
+        voted.add(username);
+    }
+
+    /**
+     * Records a vote whose write failed in a way that may have stored it
+     * anyway. Only the filter learns it, so the next check asks Mongo.
+     */
+    public void markMaybeVoted(String username) {
+        filter.put(username);
+    }
+
+    public void reset() {
+        filter = newFilter(0);
+        voted.clear();
+    }
+
+    private BloomFilter newFilter(long existingVoters) {
+        return new BloomFilter(Math.max(expectedVoters, existingVoters * 2), falsePositiveRate);
+    }
+}
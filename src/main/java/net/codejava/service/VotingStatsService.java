@@ -0,0 +1,69 @@
+package net.codejava.service;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import net.codejava.smartcontract.ChainCircuitBreaker;
+import net.codejava.smartcontract.ChainReadCache;
+import net.codejava.smartcontract.GasOracle;
+import net.codejava.smartcontract.ReceiptTracker;
+import net.codejava.smartcontract.RpcClient;
+import net.codejava.smartcontract.SharedTransactionManager;
+
+/**
+ * Voting statistics for the admin dashboard: the tally from VoteService plus
+ * the state of the vote pipeline and of the chain components behind it.
+ */
+@Service
+public class VotingStatsService {
+
+    @Autowired
+    private VoteService voteService;
+
+    @Autowired
+    private VotePipeline votePipeline;
+
+    @Autowired
+    private SharedTransactionManager transactionManager;
+
+    @Autowired
+    private ReceiptTracker receiptTracker;
+
+    @Autowired
+    private RpcClient rpcClient;
+
+    @Autowired
+    private ChainCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private VoteOutboxRelay voteOutboxRelay;
+
+    @Autowired
+    private CandidateChainIdCache candidateChainIdCache;
+
+    @Autowired
+    private GasOracle gasOracle;
+
+    @Autowired
+    private ChainReadCache chainReadCache;
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = voteService.getVotingStatistics();
+
+        // pipeline backlog per stage
+        stats.put("pipelineQueues", votePipeline.getQueueDepths());
+
+        // nonce allocation state of the shared transaction manager
+        stats.put("nonces", transactionManager.getNonceStats());
+        stats.put("pendingReceipts", receiptTracker.getPendingCount());
+        stats.put("rpc", rpcClient.getStats());
+        stats.put("chainBreaker", circuitBreaker.getStats());
+        stats.put("outbox", voteOutboxRelay.getStats());
+        stats.put("candidateIds", candidateChainIdCache.getStats());
+        stats.put("gas", gasOracle.getStats());
+        stats.put("readCache", chainReadCache.getStats());
+        return stats;
+    }
+}
@@ -0,0 +1,219 @@
+package net.codejava.smartcontract;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Guards every call to the Voting contract. Outcomes of the last window-size
+ * calls are kept; once at least min-calls are in the window and too many of
+ * them failed or took longer than slow-call-ms, the breaker opens and calls
+ * are refused straight away instead of piling up on a sick node.
+ *
+ * Only transport errors count as failures. An error the node answered with,
+ * such as a revert or a rejected transaction, shows the node is up and
+ * counts as a success (if it was fast enough).
+ *
+ * After open-ms the breaker lets half-open-probes calls through. If they all
+ * succeed in time it closes again, otherwise it stays open for another round.
+ */
+@Component
+public class ChainCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    @Value("${chain.breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${chain.breaker.min-calls:10}")
+    private int minCalls;
+
+    @Value("${chain.breaker.failure-rate:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${chain.breaker.slow-call-ms:3000}")
+    private long slowCallMs;
+
+    @Value("${chain.breaker.slow-call-rate:0.5}")
+    private double slowCallRateThreshold;
+
+    @Value("${chain.breaker.open-ms:30000}")
+    private long openMs;
+
+    @Value("${chain.breaker.half-open-probes:3}")
+    private int halfOpenProbes;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+
+    // ring of recent outcomes, only filled while closed
+    private boolean[] failed;
+    private boolean[] slow;
+    private int windowPos;
+    private int windowCount;
+    private int failedCount;
+    private int slowCount;
+
+    private int probesIssued;
+    private int probesSucceeded;
+
+    private long opens;
+    private long refused;
+
+    /**
+     * Runs a chain call through the breaker. Throws {@link OpenException}
+     * without running it when the breaker is open.
+     */
+    public <T> T call(ChainCall<T> call) throws IOException {
+        if (!tryAcquire()) {
+            throw new OpenException("Blockchain circuit is open, call refused");
+        }
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            record(start, true);
+            return result;
+        } catch (NodeReplyException e) {
+            record(start, true);
+            throw e;
+        } catch (UncheckedIOException e) {
+            record(start, false);
+            throw e;
+        } catch (RuntimeException e) {
+            // a bug or a reply that didn't decode, not the node being down
+            record(start, true);
+            throw e;
+        } catch (IOException e) {
+            record(start, false);
+            throw e;
+        }
+    }
+
+    /**
+     * Whether a call made now would be let through, without taking a probe slot.
+     */
+    public synchronized boolean isCallPermitted() {
+        switch (state) {
+            case OPEN:
+                return System.currentTimeMillis() - openedAt >= openMs;
+            case HALF_OPEN:
+                return probesIssued < halfOpenProbes;
+            default:
+                return true;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("state", state.name());
+        stats.put("windowCalls", windowCount);
+        stats.put("windowFailures", failedCount);
+        stats.put("windowSlowCalls", slowCount);
+        stats.put("opens", opens);
+        stats.put("refused", refused);
+        return stats;
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMs) {
+                refused++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probesIssued = 0;
+            probesSucceeded = 0;
+            System.out.println("[BLOCKCHAIN] Circuit half-open, probing the node");
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesIssued >= halfOpenProbes) {
+                refused++;
+                return false;
+            }
+            probesIssued++;
+        }
+        return true;
+    }
+
+    private synchronized void record(long startNanos, boolean ok) {
+        boolean tooSlow = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) > slowCallMs;
+        if (state == State.HALF_OPEN) {
+            if (!ok || tooSlow) {
+                open();
+            } else if (++probesSucceeded >= halfOpenProbes) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // a call that started before the breaker opened
+            return;
+        }
+        if (failed == null) {
+            failed = new boolean[windowSize];
+            slow = new boolean[windowSize];
+        }
+        if (windowCount == windowSize) {
+            failedCount -= failed[windowPos] ? 1 : 0;
+            slowCount -= slow[windowPos] ? 1 : 0;
+        } else {
+            windowCount++;
+        }
+        failed[windowPos] = !ok;
+        slow[windowPos] = tooSlow;
+        failedCount += ok ? 0 : 1;
+        slowCount += tooSlow ? 1 : 0;
+        windowPos = (windowPos + 1) % windowSize;
+
+        if (windowCount >= minCalls
+                && (failedCount >= failureRateThreshold * windowCount || slowCount >= slowCallRateThreshold * windowCount)) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        opens++;
+        System.err.println("[BLOCKCHAIN] Circuit opened, chain submissions deferred for " + openMs + "ms");
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowPos = 0;
+        // the ring is refilled from the start, old slots are never read before being overwritten
+        windowCount = 0;
+        failedCount = 0;
+        slowCount = 0;
+        System.out.println("[BLOCKCHAIN] Circuit closed, node is healthy again");
+    }
+
+    @FunctionalInterface
+    public interface ChainCall<T> {
+        T call() throws IOException;
+    }
+
+    public static class OpenException extends IllegalStateException {
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The node answered with an error, e.g. a revert. Not a breaker failure.
+     */
+    public static class NodeReplyException extends IOException {
+        public NodeReplyException(String message) {
+            super(message);
+        }
+    }
+}
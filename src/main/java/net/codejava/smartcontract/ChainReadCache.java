@@ -0,0 +1,226 @@
+package net.codejava.smartcontract;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+
+/**
+ * Read-through cache for contract view calls. A result is kept for the block
+ * it was read at, and every read is pinned to the current head block, so a
+ * cached answer is exactly what the node would give until the next block.
+ *
+ * A watcher thread polls eth_blockNumber every poll-interval-ms; when the
+ * head moves, all results of the old block are dropped at once. Concurrent
+ * reads of the same call at the same block share one request: the first
+ * caller sends it through the circuit breaker and the others wait for its
+ * result, so a burst of identical reads costs one RPC.
+ *
+ * Only for views that don't depend on msg.sender, since the key leaves the
+ * sender out.
+ */
+@Component
+public class ChainReadCache {
+
+    @Autowired
+    private RpcClient rpcClient;
+
+    @Autowired
+    private SharedTransactionManager transactionManager;
+
+    @Autowired
+    private ChainCircuitBreaker circuitBreaker;
+
+    @Value("${chain.read-cache.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    // a head older than this is fetched again by the reader, e.g. while the watcher is failing
+    @Value("${chain.read-cache.head-max-age-ms:5000}")
+    private long headMaxAgeMs;
+
+    private volatile BlockResults current;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong headChanges = new AtomicLong();
+
+    private Web3j web3j;
+    private ScheduledExecutorService watcher;
+    private boolean watcherFailing;
+
+    @PostConstruct
+    public void start() {
+        web3j = rpcClient.getWeb3j();
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chain-head-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+        watcher.scheduleWithFixedDelay(this::watch, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        watcher.shutdownNow();
+    }
+
+    /**
+     * The value of this read at the current head block. The loader is only
+     * run when no result for this key and block is cached or in flight, and
+     * then through the circuit breaker. Failures are not cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, BlockRead<T> loader) throws IOException {
+        BlockResults block = currentBlock();
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = block.results.putIfAbsent(key, mine);
+        if (existing != null) {
+            (existing.isDone() ? hits : coalesced).incrementAndGet();
+            return (T) await(existing);
+        }
+        misses.incrementAndGet();
+        try {
+            T value = circuitBreaker.call(() -> loader.read(block.number));
+            mine.complete(value);
+            return value;
+        } catch (IOException | RuntimeException e) {
+            block.results.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * eth_call of this calldata on the contract at the current head block,
+     * returning the raw result. The calldata holds the function and its
+     * arguments, so it is the key.
+     */
+    public String call(String contractAddress, String data) throws IOException {
+        return get(contractAddress.toLowerCase() + ":" + data, blockNumber -> {
+            EthCall response = web3j.ethCall(
+                Transaction.createEthCallTransaction(transactionManager.getFromAddress(), contractAddress, data),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(blockNumber))
+            ).send();
+            if (response.hasError()) {
+                // e.g. a revert: the node answered, so the breaker doesn't count it
+                throw new ChainCircuitBreaker.NodeReplyException("eth_call failed: " + response.getError().getMessage());
+            }
+            return response.getValue();
+        });
+    }
+
+    /**
+     * The head block as last seen, fetched first if it is too old.
+     */
+    public long getBlockNumber() throws IOException {
+        return currentBlock().number;
+    }
+
+    public Map<String, Object> getStats() {
+        BlockResults block = current;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("blockNumber", block == null ? null : block.number);
+        stats.put("entries", block == null ? 0 : block.results.size());
+        stats.put("hits", hits.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("misses", misses.get());
+        stats.put("headChanges", headChanges.get());
+        return stats;
+    }
+
+    private BlockResults currentBlock() throws IOException {
+        BlockResults block = current;
+        if (block != null && System.currentTimeMillis() - block.seenAt < headMaxAgeMs) {
+            return block;
+        }
+        return refreshHead(block);
+    }
+
+    private synchronized BlockResults refreshHead(BlockResults seen) throws IOException {
+        if (current != seen) {
+            // another thread refreshed while this one waited
+            return current;
+        }
+        // not through the breaker: a head poll would use up the half-open probes meant for real calls
+        return advance(web3j.ethBlockNumber().send().getBlockNumber().longValue());
+    }
+
+    private void watch() {
+        try {
+            advance(web3j.ethBlockNumber().send().getBlockNumber().longValue());
+            watcherFailing = false;
+        } catch (Exception e) {
+            if (!watcherFailing) {
+                System.err.println("[ERROR] Chain head poll failed: " + e.getMessage());
+                watcherFailing = true;
+            }
+        }
+    }
+
+    // a new number, higher or after a reorg lower, drops every result of the old block
+    private synchronized BlockResults advance(long number) {
+        BlockResults block = current;
+        if (block != null && block.number == number) {
+            block.seenAt = System.currentTimeMillis();
+            return block;
+        }
+        if (block != null) {
+            headChanges.incrementAndGet();
+        }
+        current = new BlockResults(number);
+        return current;
+    }
+
+    private static Object await(CompletableFuture<Object> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a shared chain read");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @FunctionalInterface
+    public interface BlockRead<T> {
+        T read(long blockNumber) throws IOException;
+    }
+
+    private static class BlockResults {
+        final long number;
+        final Map<String, CompletableFuture<Object>> results = new ConcurrentHashMap<>();
+        volatile long seenAt = System.currentTimeMillis();
+
+        BlockResults(long number) {
+            this.number = number;
+        }
+    }
+}
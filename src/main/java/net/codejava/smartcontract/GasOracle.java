@@ -0,0 +1,266 @@
+package net.codejava.smartcontract;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthEstimateGas;
+import org.web3j.protocol.core.methods.response.EthFeeHistory;
+import org.web3j.protocol.core.methods.response.EthGasPrice;
+import org.web3j.tx.gas.ContractGasProvider;
+
+/**
+ * Prices and sizes the backend's transactions from what the node reports,
+ * instead of DefaultGasProvider's fixed constants.
+ *
+ * The gas price is the next block's base fee from eth_feeHistory plus some
+ * headroom for it to rise while the transaction waits, plus the median
+ * recent tip; eth_gasPrice stands in on nodes without fee history. It is
+ * cached for price-ttl-ms, and dropped early when the node turns a
+ * transaction away as underpriced.
+ *
+ * Gas limits come from eth_estimateGas plus a margin, memoized per function
+ * selector and calldata length, since a call of the same shape costs about
+ * the same. A call that can't be estimated gets the fallback limit.
+ */
+@Component
+public class GasOracle implements ContractGasProvider {
+
+    private static final BigInteger GWEI = BigInteger.valueOf(1_000_000_000L);
+
+    private final Web3j web3j;
+    private final long priceTtlMs;
+    private final int feeHistoryBlocks;
+    private final double tipPercentile;
+    private final int baseFeeHeadroomPct;
+    private final BigInteger maxPrice;
+    private final long estimateTtlMs;
+    private final int limitMarginPct;
+    private final BigInteger fallbackLimit;
+
+    private volatile GasPrice price;
+    private final Map<String, GasLimit> limits = new ConcurrentHashMap<>();
+
+    private final AtomicLong priceRefreshes = new AtomicLong();
+    private final AtomicLong estimates = new AtomicLong();
+    private final AtomicLong estimateHits = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    @Autowired
+    public GasOracle(
+            RpcClient rpcClient,
+            @Value("${chain.gas.price-ttl-ms:3000}") long priceTtlMs,
+            @Value("${chain.gas.fee-history-blocks:10}") int feeHistoryBlocks,
+            @Value("${chain.gas.tip-percentile:50}") double tipPercentile,
+            @Value("${chain.gas.base-fee-headroom-pct:20}") int baseFeeHeadroomPct,
+            @Value("${chain.gas.max-price-gwei:1000}") long maxPriceGwei,
+            @Value("${chain.gas.estimate-ttl-ms:600000}") long estimateTtlMs,
+            @Value("${chain.gas.limit-margin-pct:25}") int limitMarginPct,
+            @Value("${chain.gas.fallback-limit:500000}") long fallbackLimit) {
+        this.web3j = rpcClient.getWeb3j();
+        this.priceTtlMs = priceTtlMs;
+        this.feeHistoryBlocks = feeHistoryBlocks;
+        this.tipPercentile = tipPercentile;
+        this.baseFeeHeadroomPct = baseFeeHeadroomPct;
+        this.maxPrice = BigInteger.valueOf(maxPriceGwei).multiply(GWEI);
+        this.estimateTtlMs = estimateTtlMs;
+        this.limitMarginPct = limitMarginPct;
+        this.fallbackLimit = BigInteger.valueOf(fallbackLimit);
+    }
+
+    /**
+     * The gas price to send with now. Refreshes from the node once the cached
+     * one is older than price-ttl-ms; if that fails the old price is kept.
+     */
+    public BigInteger gasPrice() throws IOException {
+        GasPrice current = price;
+        if (current != null && System.currentTimeMillis() - current.fetchedAt < priceTtlMs) {
+            return current.wei;
+        }
+        return refreshPrice(current);
+    }
+
+    /**
+     * The gas limit for sending this calldata from this address: the
+     * memoized estimate for its shape if there is a fresh one, otherwise a
+     * new estimate plus limit-margin-pct.
+     */
+    public BigInteger gasLimit(String from, String to, String data) {
+        String key = shapeOf(data);
+        GasLimit known = limits.get(key);
+        long now = System.currentTimeMillis();
+        if (known != null && now - known.estimatedAt < estimateTtlMs) {
+            estimateHits.incrementAndGet();
+            return known.gas;
+        }
+        try {
+            estimates.incrementAndGet();
+            EthEstimateGas response = web3j.ethEstimateGas(
+                    Transaction.createEthCallTransaction(from, to, data)).send();
+            if (response.hasError()) {
+                // e.g. the call would revert from this sender; let the node decide on the real send
+                fallbacks.incrementAndGet();
+                return fallbackLimit;
+            }
+            BigInteger gas = response.getAmountUsed()
+                    .multiply(BigInteger.valueOf(100 + limitMarginPct)).divide(BigInteger.valueOf(100));
+            limits.put(key, new GasLimit(gas, now));
+            return gas;
+        } catch (IOException e) {
+            fallbacks.incrementAndGet();
+            return known != null ? known.gas : fallbackLimit;
+        }
+    }
+
+    /**
+     * Called when the node rejected a transaction as underpriced, so the next
+     * one is priced from fresh fee data.
+     */
+    public void priceRejected() {
+        GasPrice current = price;
+        if (current != null) {
+            price = new GasPrice(current.wei, 0, current.source);
+        }
+    }
+
+    // for contract wrappers, which don't say what calldata they send
+
+    @Override
+    public BigInteger getGasPrice(String contractFunc) {
+        return getGasPrice();
+    }
+
+    @Override
+    public BigInteger getGasPrice() {
+        try {
+            return gasPrice();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public BigInteger getGasLimit(String contractFunc) {
+        return fallbackLimit;
+    }
+
+    @Override
+    public BigInteger getGasLimit() {
+        return fallbackLimit;
+    }
+
+    public Map<String, Object> getStats() {
+        GasPrice current = price;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("gasPriceWei", current == null ? null : current.wei);
+        stats.put("priceSource", current == null ? null : current.source);
+        stats.put("priceRefreshes", priceRefreshes.get());
+        stats.put("estimates", estimates.get());
+        stats.put("estimateHits", estimateHits.get());
+        stats.put("fallbacks", fallbacks.get());
+        Map<String, BigInteger> known = new HashMap<>();
+        limits.forEach((shape, limit) -> known.put(shape, limit.gas));
+        stats.put("limits", known);
+        return stats;
+    }
+
+    private synchronized BigInteger refreshPrice(GasPrice seen) throws IOException {
+        if (price != seen) {
+            // another thread refreshed while this one waited
+            return price.wei;
+        }
+        priceRefreshes.incrementAndGet();
+        try {
+            GasPrice fresh = fetchPrice();
+            price = fresh;
+            return fresh.wei;
+        } catch (IOException e) {
+            if (seen == null) {
+                throw e;
+            }
+            System.err.println("[ERROR] Gas price refresh failed, keeping the last price: " + e.getMessage());
+            // don't ask again on every send while the node is failing
+            price = new GasPrice(seen.wei, System.currentTimeMillis(), seen.source);
+            return seen.wei;
+        }
+    }
+
+    private GasPrice fetchPrice() throws IOException {
+        long now = System.currentTimeMillis();
+        EthFeeHistory history = web3j.ethFeeHistory(feeHistoryBlocks, DefaultBlockParameterName.LATEST,
+                Collections.singletonList(tipPercentile)).send();
+        if (!history.hasError() && history.getFeeHistory() != null
+                && !history.getFeeHistory().getBaseFeePerGas().isEmpty()) {
+            List<BigInteger> baseFees = history.getFeeHistory().getBaseFeePerGas();
+            // the last entry is the base fee of the block after the newest one
+            BigInteger nextBaseFee = baseFees.get(baseFees.size() - 1);
+            BigInteger wei = nextBaseFee.multiply(BigInteger.valueOf(100 + baseFeeHeadroomPct))
+                    .divide(BigInteger.valueOf(100))
+                    .add(medianTip(history.getFeeHistory().getReward()));
+            return new GasPrice(wei.min(maxPrice), now, "feeHistory");
+        }
+        EthGasPrice gasPrice = web3j.ethGasPrice().send();
+        if (gasPrice.hasError()) {
+            throw new IOException("eth_gasPrice failed: " + gasPrice.getError().getMessage());
+        }
+        return new GasPrice(gasPrice.getGasPrice().min(maxPrice), now, "gasPrice");
+    }
+
+    private static BigInteger medianTip(List<List<BigInteger>> rewards) {
+        if (rewards == null) {
+            return BigInteger.ZERO;
+        }
+        List<BigInteger> tips = new ArrayList<>();
+        for (List<BigInteger> block : rewards) {
+            if (block != null && !block.isEmpty()) {
+                tips.add(block.get(0));
+            }
+        }
+        if (tips.isEmpty()) {
+            return BigInteger.ZERO;
+        }
+        Collections.sort(tips);
+        return tips.get(tips.size() / 2);
+    }
+
+    // the selector, plus the length for calls whose cost grows with their arguments
+    private static String shapeOf(String data) {
+        String hex = data == null ? "" : data;
+        return hex.substring(0, Math.min(10, hex.length())) + ":" + hex.length();
+    }
+
+    private static class GasPrice {
+        final BigInteger wei;
+        final long fetchedAt;
+        final String source;
+
+        GasPrice(BigInteger wei, long fetchedAt, String source) {
+            this.wei = wei;
+            this.fetchedAt = fetchedAt;
+            this.source = source;
+        }
+    }
+
+    private static class GasLimit {
+        final BigInteger gas;
+        final long estimatedAt;
+
+        GasLimit(BigInteger gas, long estimatedAt) {
+            this.gas = gas;
+            this.estimatedAt = estimatedAt;
+        }
+    }
+}
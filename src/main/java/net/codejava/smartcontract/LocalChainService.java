@@ -0,0 +1,629 @@
+package net.codejava.smartcontract;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.SignedRawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.websocket.events.Notification;
+import org.web3j.utils.Numeric;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.reactivex.Flowable;
+
+/**
+ * A one-node chain inside the JVM that hosts a {@link LocalVotingContract}
+ * and speaks the JSON-RPC subset this application uses, so Web3j, the
+ * transaction manager, receipt tracker and event indexer all run unchanged
+ * against it with no network.
+ *
+ * Signed transactions are checked for signature, chain id and nonce like a
+ * real node would, wait in a pool until their nonce is next, and are mined
+ * every block-time-ms (or right away when it is 0). Every request can be
+ * delayed by a fixed latency plus jitter to imitate a remote node. State
+ * lives in memory only and eth_call always reads the latest block. Gas is
+ * priced at a constant base fee, and a block takes transactions only while
+ * their gas limit fits in what is left of the block gas limit, so a burst
+ * spreads over blocks as it would on a real chain.
+ */
+public class LocalChainService extends Service {
+
+    private static final BigInteger GAS_PRICE = BigInteger.valueOf(25_000_000_000L);
+    private static final BigInteger BLOCK_GAS_LIMIT = BigInteger.valueOf(15_000_000);
+    private static final String ZERO_HASH = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ZERO, 64);
+    private static final String EMPTY_BLOOM = "0x" + new String(new char[512]).replace('\0', '0');
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Object lock = new Object();
+
+    private final LocalVotingContract contract;
+    private final long chainId;
+    private final long blockTimeMs;
+    private final long latencyMs;
+    private final long latencyJitterMs;
+
+    private final List<LocalBlock> blocks = new ArrayList<>();
+    private final Map<String, Long> accountNonces = new HashMap<>();
+    // per sender, transactions waiting for their nonce to come up
+    private final Map<String, TreeMap<Long, PendingTx>> pool = new HashMap<>();
+    private final Map<String, ObjectNode> receipts = new HashMap<>();
+
+    private final ScheduledExecutorService miner;
+
+    public LocalChainService(String contractAddress, long chainId, long blockTimeMs, long latencyMs, long latencyJitterMs) {
+        super(false);
+        this.contract = new LocalVotingContract(contractAddress);
+        this.chainId = chainId;
+        this.blockTimeMs = blockTimeMs;
+        this.latencyMs = latencyMs;
+        this.latencyJitterMs = latencyJitterMs;
+        blocks.add(new LocalBlock(0, ZERO_HASH, System.currentTimeMillis() / 1000));
+
+        if (blockTimeMs > 0) {
+            miner = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "local-chain-miner");
+                t.setDaemon(true);
+                return t;
+            });
+            // empty blocks too, so confirmations keep counting up
+            miner.scheduleAtFixedRate(this::mine, blockTimeMs, blockTimeMs, TimeUnit.MILLISECONDS);
+        } else {
+            miner = null;
+        }
+    }
+
+    @Override
+    protected InputStream performIO(String payload) throws IOException {
+        delay();
+        JsonNode request = mapper.readTree(payload);
+        JsonNode response;
+        if (request.isArray()) {
+            ArrayNode responses = mapper.createArrayNode();
+            for (JsonNode single : request) {
+                responses.add(handle(single));
+            }
+            response = responses;
+        } else {
+            response = handle(request);
+        }
+        return new ByteArrayInputStream(mapper.writeValueAsBytes(response));
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(
+            Request request, String unsubscribeMethod, Class<T> responseType) {
+        throw new UnsupportedOperationException("The local chain does not support subscriptions");
+    }
+
+    @Override
+    public void close() {
+        if (miner != null) {
+            miner.shutdownNow();
+        }
+    }
+
+    private void delay() throws InterruptedIOException {
+        long delay = latencyMs + (latencyJitterMs > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMs + 1) : 0);
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during simulated latency");
+        }
+    }
+
+    private ObjectNode handle(JsonNode request) {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", request.get("id"));
+        JsonNode params = request.path("params");
+        try {
+            response.set("result", dispatch(request.path("method").asText(), params));
+        } catch (RpcError e) {
+            ObjectNode error = response.putObject("error");
+            error.put("code", e.code);
+            error.put("message", e.getMessage());
+        } catch (RuntimeException e) {
+            ObjectNode error = response.putObject("error");
+            error.put("code", -32603);
+            error.put("message", String.valueOf(e.getMessage()));
+        }
+        return response;
+    }
+
+    private JsonNode dispatch(String method, JsonNode params) throws RpcError {
+        switch (method) {
+            case "eth_chainId":
+                return text(Numeric.encodeQuantity(BigInteger.valueOf(chainId)));
+            case "net_version":
+                return text(String.valueOf(chainId));
+            case "web3_clientVersion":
+                return text("LocalChainService");
+            case "eth_gasPrice":
+                return text(Numeric.encodeQuantity(GAS_PRICE));
+            case "eth_feeHistory":
+                synchronized (lock) {
+                    return feeHistory(params);
+                }
+            case "eth_blockNumber":
+                synchronized (lock) {
+                    return quantity(head().number);
+                }
+            case "eth_getBlockByNumber":
+                synchronized (lock) {
+                    LocalBlock block = blockAt(params.path(0).asText());
+                    return block == null ? null : block.toJson();
+                }
+            case "eth_getBlockByHash":
+                synchronized (lock) {
+                    String hash = params.path(0).asText();
+                    for (int i = blocks.size() - 1; i >= 0; i--) {
+                        if (blocks.get(i).hash.equalsIgnoreCase(hash)) {
+                            return blocks.get(i).toJson();
+                        }
+                    }
+                    return null;
+                }
+            case "eth_getTransactionCount":
+                return quantity(transactionCount(params.path(0).asText(), params.path(1).asText("latest")));
+            case "eth_sendRawTransaction":
+                return text(sendRawTransaction(params.path(0).asText()));
+            case "eth_getTransactionReceipt":
+                synchronized (lock) {
+                    return receipts.get(params.path(0).asText().toLowerCase());
+                }
+            case "eth_getTransactionByHash":
+                synchronized (lock) {
+                    return transaction(params.path(0).asText().toLowerCase());
+                }
+            case "eth_call":
+                return text(call(params.path(0)).returnData);
+            case "eth_estimateGas":
+                return quantity(call(params.path(0)).gasUsed);
+            case "eth_getLogs":
+                return getLogs(params.path(0));
+            default:
+                throw new RpcError(-32601, "The method " + method + " does not exist/is not available");
+        }
+    }
+
+    private String sendRawTransaction(String signedHex) throws RpcError {
+        // signature recovery is the expensive part, done outside the lock
+        RawTransaction decoded = TransactionDecoder.decode(signedHex);
+        if (!(decoded instanceof SignedRawTransaction)) {
+            throw new RpcError(-32000, "transaction is not signed");
+        }
+        SignedRawTransaction signed = (SignedRawTransaction) decoded;
+        String from;
+        try {
+            from = signed.getFrom().toLowerCase();
+        } catch (SignatureException e) {
+            throw new RpcError(-32000, "invalid sender: " + e.getMessage());
+        }
+        Long txChainId = signed.getChainId();
+        if (txChainId != null && txChainId != chainId) {
+            throw new RpcError(-32000, "invalid chain id for signer");
+        }
+        if (signed.getGasLimit().compareTo(BLOCK_GAS_LIMIT) > 0) {
+            // it would never fit in a block
+            throw new RpcError(-32000, "exceeds block gas limit");
+        }
+        String txHash = Hash.sha3(signedHex).toLowerCase();
+        long nonce = signed.getNonce().longValue();
+        synchronized (lock) {
+            long accountNonce = accountNonces.getOrDefault(from, 0L);
+            if (nonce < accountNonce) {
+                throw new RpcError(-32000, "nonce too low: address " + from + ", tx: " + nonce + " state: " + accountNonce);
+            }
+            TreeMap<Long, PendingTx> waiting = pool.computeIfAbsent(from, f -> new TreeMap<>());
+            if (waiting.containsKey(nonce)) {
+                throw new RpcError(-32000, "replacement transaction underpriced");
+            }
+            waiting.put(nonce, new PendingTx(txHash, from, signed.getTo(), signed.getData(), signed.getGasLimit()));
+        }
+        if (blockTimeMs <= 0) {
+            // a full block leaves the rest for the next one, mined straight after
+            boolean more;
+            do {
+                more = mine();
+            } while (more);
+        }
+        return txHash;
+    }
+
+    /**
+     * Seals one block from the pooled transactions whose nonce is next for
+     * their sender, in nonce order, for as long as they fit under the block
+     * gas limit; the rest wait for the next block. With a block time 0 this
+     * runs after each transaction and skips empty blocks. Returns whether
+     * ready transactions were left over.
+     */
+    private boolean mine() {
+        synchronized (lock) {
+            LocalBlock parent = head();
+            LocalBlock block = new LocalBlock(parent.number + 1, parent.hash, System.currentTimeMillis() / 1000);
+            List<MinedTx> mined = new ArrayList<>();
+            long cumulativeGas = 0;
+            boolean full = false;
+            for (Map.Entry<String, TreeMap<Long, PendingTx>> entry : pool.entrySet()) {
+                long next = accountNonces.getOrDefault(entry.getKey(), 0L);
+                PendingTx tx;
+                while ((tx = entry.getValue().get(next)) != null) {
+                    // like a real node, a transaction goes in only if its whole gas limit still fits
+                    if (cumulativeGas + tx.gasLimit.longValue() > BLOCK_GAS_LIMIT.longValue()) {
+                        full = true;
+                        break;
+                    }
+                    entry.getValue().remove(next);
+                    MinedTx result = execute(tx);
+                    cumulativeGas += result.gasUsed;
+                    mined.add(result);
+                    next++;
+                }
+                accountNonces.put(entry.getKey(), next);
+            }
+            if (mined.isEmpty() && blockTimeMs <= 0) {
+                return false;
+            }
+            List<PendingTx> transactions = new ArrayList<>();
+            for (MinedTx result : mined) {
+                transactions.add(result.tx);
+            }
+            block.seal(transactions);
+            blocks.add(block);
+            long blockGas = 0;
+            int logIndex = 0;
+            for (int i = 0; i < mined.size(); i++) {
+                MinedTx result = mined.get(i);
+                PendingTx tx = result.tx;
+                ObjectNode receipt = mapper.createObjectNode();
+                ArrayNode logs = receipt.putArray("logs");
+                for (LocalVotingContract.LogEntry entry : result.logs) {
+                    ObjectNode log = logJson(entry, block, tx, i, logIndex++);
+                    logs.add(log);
+                    block.logs.add(log);
+                }
+                blockGas += result.gasUsed;
+                receipt.put("transactionHash", tx.hash);
+                receipt.put("transactionIndex", Numeric.encodeQuantity(BigInteger.valueOf(i)));
+                receipt.put("blockHash", block.hash);
+                receipt.put("blockNumber", Numeric.encodeQuantity(BigInteger.valueOf(block.number)));
+                receipt.put("from", tx.from);
+                receipt.put("to", tx.to);
+                receipt.put("cumulativeGasUsed", Numeric.encodeQuantity(BigInteger.valueOf(blockGas)));
+                receipt.put("gasUsed", Numeric.encodeQuantity(BigInteger.valueOf(result.gasUsed)));
+                receipt.put("effectiveGasPrice", Numeric.encodeQuantity(GAS_PRICE));
+                receipt.putNull("contractAddress");
+                receipt.put("logsBloom", EMPTY_BLOOM);
+                receipt.put("status", result.status);
+                receipt.put("type", "0x0");
+                receipts.put(tx.hash, receipt);
+            }
+            block.gasUsed = cumulativeGas;
+            return full;
+        }
+    }
+
+    // caller holds the lock
+    private MinedTx execute(PendingTx tx) {
+        MinedTx result = new MinedTx(tx);
+        if (tx.to == null || !contract.getAddress().equalsIgnoreCase(tx.to) || tx.data == null || tx.data.isEmpty()) {
+            return result;
+        }
+        String data = Numeric.prependHexPrefix(tx.data);
+        try {
+            // dry run first so a transaction short of gas changes nothing
+            result.gasUsed = contract.execute(tx.from, data, false).gasUsed;
+            if (result.gasUsed > tx.gasLimit.longValue()) {
+                result.gasUsed = tx.gasLimit.longValue();
+                result.status = "0x0";
+            } else {
+                result.logs = contract.execute(tx.from, data, true).logs;
+            }
+        } catch (LocalVotingContract.Revert e) {
+            result.status = "0x0";
+        }
+        return result;
+    }
+
+    private LocalVotingContract.Result call(JsonNode tx) throws RpcError {
+        String to = tx.path("to").asText(null);
+        String data = tx.has("data") ? tx.path("data").asText() : tx.path("input").asText(null);
+        if (to == null || !contract.getAddress().equalsIgnoreCase(to)) {
+            return new LocalVotingContract.Result("0x", 21000);
+        }
+        synchronized (lock) {
+            try {
+                return contract.execute(tx.path("from").asText(null), data, false);
+            } catch (LocalVotingContract.Revert e) {
+                throw new RpcError(3, "execution reverted" + (e.getMessage().isEmpty() ? "" : ": " + e.getMessage()));
+            }
+        }
+    }
+
+    private long transactionCount(String address, String tag) {
+        String account = address.toLowerCase();
+        synchronized (lock) {
+            long nonce = accountNonces.getOrDefault(account, 0L);
+            if ("pending".equals(tag)) {
+                TreeMap<Long, PendingTx> waiting = pool.get(account);
+                while (waiting != null && waiting.containsKey(nonce)) {
+                    nonce++;
+                }
+            }
+            return nonce;
+        }
+    }
+
+    private JsonNode getLogs(JsonNode filter) {
+        List<String> addresses = new ArrayList<>();
+        JsonNode address = filter.path("address");
+        if (address.isArray()) {
+            address.forEach(a -> addresses.add(a.asText().toLowerCase()));
+        } else if (address.isTextual()) {
+            addresses.add(address.asText().toLowerCase());
+        }
+        JsonNode topics = filter.path("topics");
+        ArrayNode result = mapper.createArrayNode();
+        synchronized (lock) {
+            long head = head().number;
+            long from = blockNumber(filter.path("fromBlock").asText("latest"), head);
+            long to = Math.min(blockNumber(filter.path("toBlock").asText("latest"), head), head);
+            for (long n = Math.max(0, from); n <= to; n++) {
+                for (ObjectNode log : blocks.get((int) n).logs) {
+                    if ((addresses.isEmpty() || addresses.contains(log.path("address").asText()))
+                            && topicsMatch(topics, log.path("topics"))) {
+                        result.add(log);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // each filter position is null (any), one topic, or a list of alternatives
+    private static boolean topicsMatch(JsonNode filter, JsonNode topics) {
+        if (!filter.isArray()) {
+            return true;
+        }
+        for (int i = 0; i < filter.size(); i++) {
+            JsonNode wanted = filter.get(i);
+            if (wanted == null || wanted.isNull()) {
+                continue;
+            }
+            if (i >= topics.size()) {
+                return false;
+            }
+            String topic = topics.get(i).asText();
+            boolean match = false;
+            if (wanted.isArray()) {
+                for (JsonNode alternative : wanted) {
+                    match |= alternative.asText().equalsIgnoreCase(topic);
+                }
+            } else {
+                match = wanted.asText().equalsIgnoreCase(topic);
+            }
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ObjectNode logJson(LocalVotingContract.LogEntry entry, LocalBlock block, PendingTx tx, int txIndex, int logIndex) {
+        ObjectNode log = mapper.createObjectNode();
+        log.put("removed", false);
+        log.put("logIndex", Numeric.encodeQuantity(BigInteger.valueOf(logIndex)));
+        log.put("transactionIndex", Numeric.encodeQuantity(BigInteger.valueOf(txIndex)));
+        log.put("transactionHash", tx.hash);
+        log.put("blockHash", block.hash);
+        log.put("blockNumber", Numeric.encodeQuantity(BigInteger.valueOf(block.number)));
+        log.put("address", contract.getAddress());
+        log.put("data", entry.data);
+        ArrayNode topics = log.putArray("topics");
+        entry.topics.forEach(topics::add);
+        return log;
+    }
+
+    // pooled or mined, with only the fields this application reads
+    private JsonNode transaction(String hash) {
+        ObjectNode receipt = receipts.get(hash);
+        if (receipt != null) {
+            ObjectNode tx = mapper.createObjectNode();
+            tx.put("hash", hash);
+            tx.set("blockHash", receipt.get("blockHash"));
+            tx.set("blockNumber", receipt.get("blockNumber"));
+            tx.set("transactionIndex", receipt.get("transactionIndex"));
+            tx.set("from", receipt.get("from"));
+            tx.set("to", receipt.get("to"));
+            return tx;
+        }
+        for (TreeMap<Long, PendingTx> waiting : pool.values()) {
+            for (Map.Entry<Long, PendingTx> entry : waiting.entrySet()) {
+                PendingTx pending = entry.getValue();
+                if (pending.hash.equals(hash)) {
+                    ObjectNode tx = mapper.createObjectNode();
+                    tx.put("hash", hash);
+                    tx.putNull("blockHash");
+                    tx.putNull("blockNumber");
+                    tx.put("nonce", Numeric.encodeQuantity(BigInteger.valueOf(entry.getKey())));
+                    tx.put("from", pending.from);
+                    tx.put("to", pending.to);
+                    tx.put("gas", Numeric.encodeQuantity(pending.gasLimit));
+                    tx.put("input", pending.data);
+                    return tx;
+                }
+            }
+        }
+        return null;
+    }
+
+    // a constant base fee and no tips, over the blocks that exist
+    private JsonNode feeHistory(JsonNode params) {
+        JsonNode countParam = params.path(0);
+        long count = countParam.isNumber() ? countParam.asLong() : Numeric.decodeQuantity(countParam.asText()).longValue();
+        long newest = Math.min(blockNumber(params.path(1).asText("latest"), head().number), head().number);
+        long oldest = Math.max(0, newest - count + 1);
+        int percentiles = params.path(2).size();
+        ObjectNode history = mapper.createObjectNode();
+        history.put("oldestBlock", Numeric.encodeQuantity(BigInteger.valueOf(oldest)));
+        ArrayNode baseFees = history.putArray("baseFeePerGas");
+        ArrayNode gasUsedRatio = history.putArray("gasUsedRatio");
+        ArrayNode rewards = history.putArray("reward");
+        for (long number = oldest; number <= newest; number++) {
+            baseFees.add(Numeric.encodeQuantity(GAS_PRICE));
+            gasUsedRatio.add((double) blocks.get((int) number).gasUsed / BLOCK_GAS_LIMIT.longValue());
+            ArrayNode reward = rewards.addArray();
+            for (int i = 0; i < percentiles; i++) {
+                reward.add("0x0");
+            }
+        }
+        // and the next block's
+        baseFees.add(Numeric.encodeQuantity(GAS_PRICE));
+        return history;
+    }
+
+    private LocalBlock head() {
+        return blocks.get(blocks.size() - 1);
+    }
+
+    private LocalBlock blockAt(String tag) {
+        long number = blockNumber(tag, head().number);
+        return number >= 0 && number < blocks.size() ? blocks.get((int) number) : null;
+    }
+
+    private static long blockNumber(String tag, long head) {
+        switch (tag) {
+            case "latest":
+            case "pending":
+            case "safe":
+            case "finalized":
+                return head;
+            case "earliest":
+                return 0;
+            default:
+                return Numeric.decodeQuantity(tag).longValue();
+        }
+    }
+
+    private JsonNode text(String value) {
+        return mapper.getNodeFactory().textNode(value);
+    }
+
+    private JsonNode quantity(long value) {
+        return text(Numeric.encodeQuantity(BigInteger.valueOf(value)));
+    }
+
+    private class LocalBlock {
+        final long number;
+        final String parentHash;
+        final long timestamp;
+        final List<String> txHashes = new ArrayList<>();
+        final List<ObjectNode> logs = new ArrayList<>();
+        String hash;
+        long gasUsed;
+
+        LocalBlock(long number, String parentHash, long timestamp) {
+            this.number = number;
+            this.parentHash = parentHash;
+            this.timestamp = timestamp;
+            this.hash = Hash.sha3String(parentHash + ":" + number + ":" + timestamp);
+        }
+
+        void seal(List<PendingTx> transactions) {
+            StringBuilder content = new StringBuilder(parentHash).append(':').append(number).append(':').append(timestamp);
+            for (PendingTx tx : transactions) {
+                txHashes.add(tx.hash);
+                content.append(':').append(tx.hash);
+            }
+            hash = Hash.sha3String(content.toString());
+        }
+
+        ObjectNode toJson() {
+            ObjectNode block = mapper.createObjectNode();
+            block.put("number", Numeric.encodeQuantity(BigInteger.valueOf(number)));
+            block.put("hash", hash);
+            block.put("parentHash", parentHash);
+            block.put("nonce", "0x0000000000000000");
+            block.put("sha3Uncles", ZERO_HASH);
+            block.put("logsBloom", EMPTY_BLOOM);
+            block.put("transactionsRoot", ZERO_HASH);
+            block.put("stateRoot", ZERO_HASH);
+            block.put("receiptsRoot", ZERO_HASH);
+            block.put("miner", contract.getAddress());
+            block.put("difficulty", "0x0");
+            block.put("totalDifficulty", "0x0");
+            block.put("extraData", "0x");
+            block.put("size", "0x0");
+            block.put("gasLimit", Numeric.encodeQuantity(BLOCK_GAS_LIMIT));
+            block.put("gasUsed", Numeric.encodeQuantity(BigInteger.valueOf(gasUsed)));
+            block.put("timestamp", Numeric.encodeQuantity(BigInteger.valueOf(timestamp)));
+            ArrayNode transactions = block.putArray("transactions");
+            txHashes.forEach(transactions::add);
+            block.putArray("uncles");
+            return block;
+        }
+    }
+
+    // a pooled transaction as it ran in a block
+    private static class MinedTx {
+        final PendingTx tx;
+        long gasUsed = 21000;
+        String status = "0x1";
+        List<LocalVotingContract.LogEntry> logs = Collections.emptyList();
+
+        MinedTx(PendingTx tx) {
+            this.tx = tx;
+        }
+    }
+
+    private static class PendingTx {
+        final String hash;
+        final String from;
+        final String to;
+        final String data;
+        final BigInteger gasLimit;
+
+        PendingTx(String hash, String from, String to, String data, BigInteger gasLimit) {
+            this.hash = hash;
+            this.from = from;
+            this.to = to;
+            this.data = data;
+            this.gasLimit = gasLimit;
+        }
+    }
+
+    private static class RpcError extends Exception {
+        final int code;
+
+        RpcError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package net.codejava.smartcontract;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Bytes32;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.utils.Numeric;
+
+/**
+ * contracts/Voting.sol in Java, for {@link LocalChainService}. Takes the same
+ * ABI-encoded calldata as the deployed contract and answers with the same
+ * return data, events and revert messages, so callers can't tell the two
+ * apart. Not thread-safe; the local chain calls it under its own lock.
+ */
+class LocalVotingContract {
+
+    static final Event CANDIDATE_ADDED = new Event("CandidateAdded", Arrays.asList(
+            new TypeReference<Uint256>(true) {}, new TypeReference<Utf8String>() {}, new TypeReference<Utf8String>() {}));
+    static final Event CANDIDATE_REMOVED = new Event("CandidateRemoved", Arrays.asList(
+            new TypeReference<Uint256>(true) {}));
+    static final Event VOTED = new Event("VotedEvent", Arrays.asList(
+            new TypeReference<Uint256>(true) {}, new TypeReference<Address>() {}));
+    static final Event OWNERSHIP_TRANSFERRED = new Event("OwnershipTransferred", Arrays.asList(
+            new TypeReference<Address>(true) {}, new TypeReference<Address>(true) {}));
+
+    private static final String ADD_CANDIDATE = FunctionEncoder.buildMethodId("addCandidate(string,string,string)");
+    private static final String REMOVE_CANDIDATE = FunctionEncoder.buildMethodId("removeCandidate(uint256)");
+    private static final String VOTE = FunctionEncoder.buildMethodId("vote(uint256)");
+    private static final String VOTE_BATCH = FunctionEncoder.buildMethodId("voteBatch(bytes32[],uint256[])");
+    private static final String TRANSFER_OWNERSHIP = FunctionEncoder.buildMethodId("transferOwnership(address)");
+    private static final String OWNER = FunctionEncoder.buildMethodId("owner()");
+    private static final String CANDIDATES = FunctionEncoder.buildMethodId("candidates(uint256)");
+    private static final String CANDIDATES_COUNT = FunctionEncoder.buildMethodId("candidatesCount()");
+    private static final String VOTERS = FunctionEncoder.buildMethodId("voters(address)");
+    private static final String VOTED_COMMITMENTS = FunctionEncoder.buildMethodId("votedCommitments(bytes32)");
+    private static final String GET_CANDIDATE = FunctionEncoder.buildMethodId("getCandidate(uint256)");
+    private static final String GET_VOTES = FunctionEncoder.buildMethodId("getVotes(uint256)");
+    private static final String WINNING_CANDIDATE = FunctionEncoder.buildMethodId("winningCandidate()");
+    private static final String GET_ACTIVE_CANDIDATES_COUNT = FunctionEncoder.buildMethodId("getActiveCandidatesCount()");
+    private static final String GET_ACTIVE_CANDIDATE_IDS = FunctionEncoder.buildMethodId("getActiveCandidateIds()");
+
+    // rough gas figures, only used for receipts and estimates
+    private static final long BASE_GAS = 21000;
+    private static final long WRITE_GAS = 30000;
+    private static final long GAS_PER_BATCH_VOTE = 30000;
+
+    private final String address;
+    // unset until the first transaction, whose sender deploys the contract
+    private String owner;
+    // candidates.get(i) has id i + 1
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final Set<String> voters = new HashSet<>();
+    private final Set<String> votedCommitments = new HashSet<>();
+
+    LocalVotingContract(String address) {
+        this.address = address.toLowerCase();
+    }
+
+    String getAddress() {
+        return address;
+    }
+
+    /**
+     * Runs calldata as {@code from}. With commit false nothing is changed,
+     * which is how eth_call and eth_estimateGas see the contract.
+     */
+    Result execute(String from, String data, boolean commit) throws Revert {
+        String sender = from == null ? Address.DEFAULT.getValue() : from.toLowerCase();
+        if (owner == null && commit) {
+            owner = sender;
+        }
+        if (data == null || data.length() < 10) {
+            throw new Revert("");
+        }
+        String selector = data.substring(0, 10).toLowerCase();
+        if (selector.equals(ADD_CANDIDATE)) {
+            List<Type> args = decode(data, new TypeReference<Utf8String>() {}, new TypeReference<Utf8String>() {},
+                    new TypeReference<Utf8String>() {});
+            return addCandidate(sender, text(args.get(0)), text(args.get(1)), text(args.get(2)), commit);
+        } else if (selector.equals(REMOVE_CANDIDATE)) {
+            return removeCandidate(sender, uint(decode(data, new TypeReference<Uint256>() {}).get(0)), commit);
+        } else if (selector.equals(VOTE)) {
+            return vote(sender, uint(decode(data, new TypeReference<Uint256>() {}).get(0)), commit);
+        } else if (selector.equals(VOTE_BATCH)) {
+            List<Type> args = decode(data, new TypeReference<DynamicArray<Bytes32>>() {},
+                    new TypeReference<DynamicArray<Uint256>>() {});
+            return voteBatch(sender, (DynamicArray<?>) args.get(0), (DynamicArray<?>) args.get(1), commit);
+        } else if (selector.equals(TRANSFER_OWNERSHIP)) {
+            String newOwner = ((Address) decode(data, new TypeReference<Address>() {}).get(0)).getValue();
+            return transferOwnership(sender, newOwner, commit);
+        } else if (selector.equals(OWNER)) {
+            return view(new Address(owner == null ? Address.DEFAULT.getValue() : owner));
+        } else if (selector.equals(CANDIDATES)) {
+            long id = uint(decode(data, new TypeReference<Uint256>() {}).get(0));
+            if (id >= 1 && id <= candidates.size()) {
+                return view(candidateFields(candidates.get((int) id - 1)));
+            }
+            // unset mapping entry, all fields zero
+            Candidate empty = new Candidate(0, "", "", "");
+            empty.isActive = false;
+            return view(candidateFields(empty));
+        } else if (selector.equals(CANDIDATES_COUNT)) {
+            return view(new Uint256(candidates.size()));
+        } else if (selector.equals(VOTERS)) {
+            String voter = ((Address) decode(data, new TypeReference<Address>() {}).get(0)).getValue();
+            return view(new Bool(voters.contains(voter.toLowerCase())));
+        } else if (selector.equals(VOTED_COMMITMENTS)) {
+            byte[] commitment = ((Bytes32) decode(data, new TypeReference<Bytes32>() {}).get(0)).getValue();
+            return view(new Bool(votedCommitments.contains(Numeric.toHexString(commitment))));
+        } else if (selector.equals(GET_CANDIDATE)) {
+            long id = uint(decode(data, new TypeReference<Uint256>() {}).get(0));
+            require(id <= candidates.size() && id > 0, "Invalid candidate ID");
+            return view(candidateFields(candidates.get((int) id - 1)));
+        } else if (selector.equals(GET_VOTES)) {
+            long id = uint(decode(data, new TypeReference<Uint256>() {}).get(0));
+            require(id > 0 && id <= candidates.size(), "Invalid candidate");
+            return view(new Uint256(candidates.get((int) id - 1).voteCount));
+        } else if (selector.equals(WINNING_CANDIDATE)) {
+            long winningVoteCount = 0;
+            long winningCandidateId = 0;
+            for (Candidate c : candidates) {
+                if (c.isActive && c.voteCount > winningVoteCount) {
+                    winningVoteCount = c.voteCount;
+                    winningCandidateId = c.id;
+                }
+            }
+            return view(new Uint256(winningCandidateId));
+        } else if (selector.equals(GET_ACTIVE_CANDIDATES_COUNT)) {
+            return view(new Uint256(activeIds().size()));
+        } else if (selector.equals(GET_ACTIVE_CANDIDATE_IDS)) {
+            return view(new DynamicArray<>(Uint256.class, activeIds()));
+        }
+        // no fallback function in Voting.sol
+        throw new Revert("");
+    }
+
+    private Result addCandidate(String sender, String name, String party, String imageHash, boolean commit) throws Revert {
+        onlyOwner(sender);
+        long id = candidates.size() + 1;
+        if (commit) {
+            candidates.add(new Candidate(id, name, party, imageHash));
+        }
+        return write(BASE_GAS + WRITE_GAS * 4,
+                log(CANDIDATE_ADDED, Collections.singletonList(uintTopic(id)), new Utf8String(name), new Utf8String(party)));
+    }
+
+    private Result removeCandidate(String sender, long id, boolean commit) throws Revert {
+        onlyOwner(sender);
+        require(id <= candidates.size() && id > 0, "Invalid candidate ID");
+        Candidate candidate = candidates.get((int) id - 1);
+        require(candidate.isActive, "Candidate already inactive");
+        if (commit) {
+            candidate.isActive = false;
+        }
+        return write(BASE_GAS + WRITE_GAS, log(CANDIDATE_REMOVED, Collections.singletonList(uintTopic(id))));
+    }
+
+    private Result vote(String sender, long id, boolean commit) throws Revert {
+        require(!voters.contains(sender), "You have already voted");
+        require(id > 0 && id <= candidates.size(), "Invalid candidate");
+        Candidate candidate = candidates.get((int) id - 1);
+        require(candidate.isActive, "Candidate is not active");
+        if (commit) {
+            voters.add(sender);
+            candidate.voteCount++;
+        }
+        return write(BASE_GAS + WRITE_GAS * 2,
+                log(VOTED, Collections.singletonList(uintTopic(id)), new Address(sender)));
+    }
+
+    private Result voteBatch(String sender, DynamicArray<?> commitments, DynamicArray<?> candidateIds, boolean commit)
+            throws Revert {
+        onlyOwner(sender);
+        require(commitments.getValue().size() == candidateIds.getValue().size(), "Length mismatch");
+        List<LogEntry> logs = new ArrayList<>();
+        // a dry run still has to skip duplicates inside the batch
+        Set<String> counted = new HashSet<>();
+        for (int i = 0; i < commitments.getValue().size(); i++) {
+            String commitment = Numeric.toHexString(((Bytes32) commitments.getValue().get(i)).getValue());
+            long id = uint((Type<?>) candidateIds.getValue().get(i));
+            if (votedCommitments.contains(commitment) || counted.contains(commitment)) {
+                continue;
+            }
+            if (id == 0 || id > candidates.size() || !candidates.get((int) id - 1).isActive) {
+                continue;
+            }
+            counted.add(commitment);
+            if (commit) {
+                votedCommitments.add(commitment);
+                candidates.get((int) id - 1).voteCount++;
+            }
+            logs.add(log(VoteBatcher.COMMITMENT_VOTED, Arrays.asList(commitment, uintTopic(id))));
+        }
+        Result result = write(BASE_GAS + WRITE_GAS + GAS_PER_BATCH_VOTE * commitments.getValue().size());
+        result.logs.addAll(logs);
+        return result;
+    }
+
+    private Result transferOwnership(String sender, String newOwner, boolean commit) throws Revert {
+        onlyOwner(sender);
+        require(!Address.DEFAULT.getValue().equals(newOwner), "New owner cannot be the zero address");
+        String previousOwner = owner == null ? sender : owner;
+        LogEntry log = log(OWNERSHIP_TRANSFERRED, Arrays.asList(addressTopic(previousOwner), addressTopic(newOwner)));
+        if (commit) {
+            owner = newOwner.toLowerCase();
+        }
+        return write(BASE_GAS + WRITE_GAS, log);
+    }
+
+    private void onlyOwner(String sender) throws Revert {
+        // before the first transaction the caller would become the owner
+        require(owner == null || owner.equals(sender), "Only owner can perform this action");
+    }
+
+    private List<Uint256> activeIds() {
+        List<Uint256> ids = new ArrayList<>();
+        for (Candidate c : candidates) {
+            if (c.isActive) {
+                ids.add(new Uint256(c.id));
+            }
+        }
+        return ids;
+    }
+
+    private static Type<?>[] candidateFields(Candidate c) {
+        return new Type<?>[] {
+            new Uint256(c.id), new Utf8String(c.name), new Utf8String(c.party),
+            new Utf8String(c.imageHash), new Uint256(c.voteCount), new Bool(c.isActive)
+        };
+    }
+
+    private static void require(boolean condition, String reason) throws Revert {
+        if (!condition) {
+            throw new Revert(reason);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static List<Type> decode(String data, TypeReference<?>... types) {
+        Function signature = new Function("", Collections.emptyList(), Arrays.asList(types));
+        return FunctionReturnDecoder.decode("0x" + data.substring(10), signature.getOutputParameters());
+    }
+
+    private static String text(Type<?> value) {
+        return (String) value.getValue();
+    }
+
+    private static long uint(Type<?> value) {
+        return ((BigInteger) value.getValue()).longValue();
+    }
+
+    private static String uintTopic(long value) {
+        return Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(value), 64);
+    }
+
+    private static String addressTopic(String address) {
+        return Numeric.toHexStringWithPrefixZeroPadded(Numeric.toBigInt(address), 64);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Result view(Type... values) {
+        return new Result("0x" + FunctionEncoder.encodeConstructor(Arrays.<Type>asList(values)), BASE_GAS);
+    }
+
+    private static Result write(long gas, LogEntry... logs) {
+        Result result = new Result("0x", gas);
+        result.logs.addAll(Arrays.asList(logs));
+        return result;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static LogEntry log(Event event, List<String> indexed, Type... data) {
+        List<String> topics = new ArrayList<>();
+        topics.add(EventEncoder.encode(event));
+        topics.addAll(indexed);
+        return new LogEntry(topics, "0x" + FunctionEncoder.encodeConstructor(Arrays.<Type>asList(data)));
+    }
+
+    private static class Candidate {
+        final long id;
+        final String name;
+        final String party;
+        final String imageHash;
+        long voteCount;
+        boolean isActive = true;
+
+        Candidate(long id, String name, String party, String imageHash) {
+            this.id = id;
+            this.name = name;
+            this.party = party;
+            this.imageHash = imageHash;
+        }
+    }
+
+    static class Result {
+        final String returnData;
+        final long gasUsed;
+        final List<LogEntry> logs = new ArrayList<>();
+
+        Result(String returnData, long gasUsed) {
+            this.returnData = returnData;
+            this.gasUsed = gasUsed;
+        }
+    }
+
+    static class LogEntry {
+        final List<String> topics;
+        final String data;
+
+        LogEntry(List<String> topics, String data) {
+            this.topics = topics;
+            this.data = data;
+        }
+    }
+
+    static class Revert extends Exception {
+        Revert(String reason) {
+            super(reason);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package net.codejava.smartcontract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+/**
+ * Waits for transaction receipts so callers don't have to. Submitted hashes
+ * are registered here and polled together, one JSON-RPC batch of
+ * eth_getTransactionReceipt per batch-size hashes, on a single scheduler
+ * thread; each registration gets a future that completes with the receipt.
+ */
+@Component
+public class ReceiptTracker {
+
+    @Autowired
+    private RpcClient rpcClient;
+
+    @Value("${chain.receipts.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${chain.receipts.batch-size:50}")
+    private int batchSize;
+
+    // a transaction without a receipt after this long is given up on
+    @Value("${chain.receipts.timeout-ms:300000}")
+    private long timeoutMs;
+
+    private final Map<String, PendingReceipt> pending = new ConcurrentHashMap<>();
+
+    private Web3j web3j;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        web3j = rpcClient.getWeb3j();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "receipt-tracker");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Registers a submitted transaction. The future completes with its
+     * receipt once mined, or with a TimeoutException after timeout-ms.
+     */
+    public CompletableFuture<TransactionReceipt> track(String txHash) {
+        PendingReceipt entry = pending.computeIfAbsent(txHash, h -> new PendingReceipt());
+        return entry.future;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void poll() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> hashes = new ArrayList<>(pending.keySet());
+        for (int from = 0; from < hashes.size(); from += batchSize) {
+            List<String> chunk = hashes.subList(from, Math.min(from + batchSize, hashes.size()));
+            try {
+                pollBatch(chunk);
+            } catch (Exception e) {
+                System.err.println("[ERROR] Receipt poll of " + chunk.size() + " transactions failed: " + e.getMessage());
+            }
+        }
+        expire();
+    }
+
+    private void pollBatch(List<String> hashes) throws Exception {
+        BatchRequest batch = web3j.newBatch();
+        for (String hash : hashes) {
+            batch.add(web3j.ethGetTransactionReceipt(hash));
+        }
+        for (Response<?> response : batch.send().getResponses()) {
+            if (response.hasError()) {
+                continue;
+            }
+            Optional<TransactionReceipt> receipt = ((EthGetTransactionReceipt) response).getTransactionReceipt();
+            if (receipt.isPresent()) {
+                // matched by hash, the node may answer a batch in any order
+                PendingReceipt entry = pending.remove(receipt.get().getTransactionHash());
+                if (entry != null) {
+                    entry.future.complete(receipt.get());
+                }
+            }
+        }
+    }
+
+    private void expire() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, PendingReceipt> entry : pending.entrySet()) {
+            if (now - entry.getValue().registeredAt > timeoutMs && pending.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().future.completeExceptionally(
+                        new TimeoutException("No receipt for " + entry.getKey() + " after " + timeoutMs + "ms"));
+            }
+        }
+    }
+
+    private static class PendingReceipt {
+        final CompletableFuture<TransactionReceipt> future = new CompletableFuture<>();
+        final long registeredAt = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,167 @@
+package net.codejava.smartcontract;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+/**
+ * The one HTTP client to the RPC node. Every chain-facing class takes its
+ * Web3j from here, so they share a single keep-alive connection pool instead
+ * of each opening their own. HTTP/2 is negotiated when the node offers it
+ * over TLS, multiplexing calls over one connection.
+ *
+ * Each call has a deadline covering connect, send and read. At most
+ * max-concurrent calls are on the wire at once; the rest wait for a slot
+ * within their deadline. In-flight calls and a latency histogram are kept
+ * for the admin stats.
+ *
+ * With chain.backend=local the Web3j talks to an in-JVM {@link LocalChainService}
+ * instead, hosting the Voting contract at CONTRACT_ADDRESS, for load tests
+ * and CI without a node.
+ */
+@Component
+public class RpcClient {
+
+    // upper bounds of the latency histogram buckets, the last bucket is open
+    private static final long[] LATENCY_BUCKETS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000};
+
+    private final Web3j web3j;
+    private final OkHttpClient httpClient;
+    private final Semaphore slots;
+    private final long callTimeoutMs;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS_MS.length + 1);
+
+    @Autowired
+    public RpcClient(
+            @Value("${chain.backend:rpc}") String backend,
+            @Value("${AVALANCHE_RPC_URL:}") String rpcUrl,
+            @Value("${CONTRACT_ADDRESS}") String contractAddress,
+            @Value("${chain.rpc.max-idle-connections:16}") int maxIdleConnections,
+            @Value("${chain.rpc.keep-alive-ms:300000}") long keepAliveMs,
+            @Value("${chain.rpc.max-concurrent:64}") int maxConcurrent,
+            @Value("${chain.rpc.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${chain.rpc.call-timeout-ms:15000}") long callTimeoutMs,
+            @Value("${chain.local.block-time-ms:1000}") long localBlockTimeMs,
+            @Value("${chain.local.latency-ms:0}") long localLatencyMs,
+            @Value("${chain.local.latency-jitter-ms:0}") long localLatencyJitterMs) {
+        this.callTimeoutMs = callTimeoutMs;
+        this.slots = new Semaphore(maxConcurrent);
+        this.httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMs, TimeUnit.MILLISECONDS))
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(callTimeoutMs, TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeoutMs, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .addInterceptor(this::measure)
+                .build();
+        if ("local".equalsIgnoreCase(backend)) {
+            this.web3j = Web3j.build(new LocalChainService(contractAddress, SharedTransactionManager.FUJI_CHAIN_ID,
+                    localBlockTimeMs, localLatencyMs, localLatencyJitterMs));
+            System.out.println("[INIT] Using the in-JVM local chain, block time " + localBlockTimeMs + "ms, latency "
+                    + localLatencyMs + "ms +" + localLatencyJitterMs + "ms");
+        } else {
+            if (rpcUrl.isEmpty()) {
+                throw new IllegalStateException("AVALANCHE_RPC_URL must be set unless chain.backend=local");
+            }
+            this.web3j = Web3j.build(new HttpService(rpcUrl, httpClient));
+            System.out.println("[INIT] RPC client ready, " + maxConcurrent + " concurrent calls, "
+                    + callTimeoutMs + "ms deadline");
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        web3j.shutdown();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    public Web3j getWeb3j() {
+        return web3j;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long count = requests.get();
+        stats.put("inFlight", inFlight.get());
+        stats.put("requests", count);
+        stats.put("failures", failures.get());
+        stats.put("avgLatencyMs", count == 0 ? 0 : totalLatencyMs.get() / count);
+        stats.put("maxLatencyMs", maxLatencyMs.get());
+        stats.put("connections", httpClient.connectionPool().connectionCount());
+        stats.put("idleConnections", httpClient.connectionPool().idleConnectionCount());
+
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < LATENCY_BUCKETS_MS.length; i++) {
+            histogram.put("<=" + LATENCY_BUCKETS_MS[i] + "ms", latencyBuckets.get(i));
+        }
+        histogram.put(">" + LATENCY_BUCKETS_MS[LATENCY_BUCKETS_MS.length - 1] + "ms",
+                latencyBuckets.get(LATENCY_BUCKETS_MS.length));
+        stats.put("latency", histogram);
+        return stats;
+    }
+
+    private Response measure(Interceptor.Chain chain) throws IOException {
+        try {
+            if (!slots.tryAcquire(callTimeoutMs, TimeUnit.MILLISECONDS)) {
+                failures.incrementAndGet();
+                throw new InterruptedIOException("No free RPC slot within " + callTimeoutMs + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for an RPC slot");
+        }
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Response response = chain.proceed(chain.request());
+            ok = response.isSuccessful();
+            return response;
+        } finally {
+            inFlight.decrementAndGet();
+            slots.release();
+            record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), ok);
+        }
+    }
+
+    private void record(long latencyMs, boolean ok) {
+        requests.incrementAndGet();
+        if (!ok) {
+            failures.incrementAndGet();
+        }
+        totalLatencyMs.addAndGet(latencyMs);
+        maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS_MS.length && latencyMs > LATENCY_BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        latencyBuckets.incrementAndGet(bucket);
+    }
+}
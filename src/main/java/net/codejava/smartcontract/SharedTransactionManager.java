@@ -0,0 +1,232 @@
+package net.codejava.smartcontract;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.tx.RawTransactionManager;
+
+/**
+ * The one transaction manager for the backend key. Nonces are handed out
+ * locally from an atomic counter instead of asking the node before every
+ * send, so any number of transactions can be signed and in flight at once
+ * without two of them getting the same nonce.
+ *
+ * A nonce is only put back, to be reused first, when the node's error says
+ * the transaction was turned away before it took the nonce (underpriced,
+ * out of funds, bad gas). "already known" means the node has this exact
+ * transaction, so it counts as sent. Any other error, and a send that failed
+ * in transit, leaves the nonce uncertain until a resync against the node's
+ * pending count shows whether it was used. "nonce too low" triggers a
+ * resync and a retry with a fresh nonce.
+ */
+@Component
+public class SharedTransactionManager extends RawTransactionManager {
+
+    // Avalanche Fuji testnet, signed with EIP-155
+    public static final long FUJI_CHAIN_ID = 43113;
+
+    private static final int MAX_NONCE_RETRIES = 3;
+
+    private final Web3j web3j;
+    private final GasOracle gasOracle;
+
+    @Value("${chain.nonce.resync-interval-ms:15000}")
+    private long resyncIntervalMs;
+
+    // next nonce to hand out, -1 until the first sync with the node
+    private final AtomicLong nextNonce = new AtomicLong(-1);
+    // nonces that were never used and must be filled before the counter moves on
+    private final ConcurrentSkipListSet<BigInteger> gaps = new ConcurrentSkipListSet<>();
+    // nonces whose send failed in transit; the node may or may not have them
+    private final Set<BigInteger> uncertain = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public SharedTransactionManager(
+            RpcClient rpcClient,
+            GasOracle gasOracle,
+            @Value("${TEST_PRIVATE_KEY}") String privateKey) {
+        this(rpcClient.getWeb3j(), gasOracle, Credentials.create(privateKey), FUJI_CHAIN_ID);
+    }
+
+    private SharedTransactionManager(Web3j web3j, GasOracle gasOracle, Credentials credentials, long chainId) {
+        super(web3j, credentials, chainId,
+            5,    // Attempt to retry failed transactions 5 times
+            3000  // 3 second delay between retries
+        );
+        this.web3j = web3j;
+        this.gasOracle = gasOracle;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "nonce-resync");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::resolveUncertain, resyncIntervalMs, resyncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    protected BigInteger getNonce() throws IOException {
+        BigInteger gap = gaps.pollFirst();
+        if (gap != null) {
+            return gap;
+        }
+        if (nextNonce.get() < 0) {
+            resync();
+        }
+        return BigInteger.valueOf(nextNonce.getAndIncrement());
+    }
+
+    @Override
+    public EthSendTransaction sendTransaction(BigInteger gasPrice, BigInteger gasLimit, String to,
+            String data, BigInteger value, boolean constructor) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            BigInteger nonce = getNonce();
+            RawTransaction rawTransaction = RawTransaction.createTransaction(nonce, gasPrice, gasLimit, to, value, data);
+            String signed = sign(rawTransaction);
+            EthSendTransaction response;
+            try {
+                response = web3j.ethSendRawTransaction(signed).send();
+            } catch (IOException e) {
+                uncertain.add(nonce);
+                throw e;
+            }
+            if (!response.hasError()) {
+                submitted.incrementAndGet();
+                return response;
+            }
+            String message = String.valueOf(response.getError().getMessage()).toLowerCase();
+            if (isNonceTaken(message)) {
+                // used by someone else; the node's count is ahead of ours
+                resync();
+                if (attempt < MAX_NONCE_RETRIES) {
+                    continue;
+                }
+            } else if (message.contains("already known")) {
+                // an earlier send of this very transaction got through
+                submitted.incrementAndGet();
+                EthSendTransaction known = new EthSendTransaction();
+                known.setId(response.getId());
+                known.setJsonrpc(response.getJsonrpc());
+                known.setResult(Hash.sha3(signed));
+                return known;
+            } else if (isRejectedUnused(message)) {
+                // rejected outright, so the nonce is still free
+                gaps.add(nonce);
+                if (isUnderpriced(message)) {
+                    gasOracle.priceRejected();
+                }
+            } else {
+                // can't tell whether the node took the nonce; ask it
+                uncertain.add(nonce);
+                scheduler.execute(this::resolveUncertain);
+            }
+            rejected.incrementAndGet();
+            return response;
+        }
+    }
+
+    /**
+     * Moves the counter up to the node's pending transaction count and drops
+     * any held nonces the node has already used. Never moves the counter
+     * back, since nonces above the node's count may still be in flight.
+     */
+    public void resync() throws IOException {
+        long pending = pendingTransactionCount();
+        nextNonce.accumulateAndGet(pending, Math::max);
+        gaps.headSet(BigInteger.valueOf(pending)).clear();
+        resyncs.incrementAndGet();
+    }
+
+    public Map<String, Object> getNonceStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("nextNonce", nextNonce.get());
+        stats.put("gaps", gaps.size());
+        stats.put("uncertain", uncertain.size());
+        stats.put("submitted", submitted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("resyncs", resyncs.get());
+        return stats;
+    }
+
+    /**
+     * Decides the uncertain nonces: below the node's pending count they were
+     * used, at or above it the send never arrived and they become gaps.
+     */
+    private void resolveUncertain() {
+        if (uncertain.isEmpty()) {
+            return;
+        }
+        try {
+            long pending = pendingTransactionCount();
+            for (BigInteger nonce : uncertain) {
+                if (nonce.longValue() >= pending) {
+                    gaps.add(nonce);
+                }
+                uncertain.remove(nonce);
+            }
+            nextNonce.accumulateAndGet(pending, Math::max);
+            if (!gaps.isEmpty()) {
+                System.out.println("[BLOCKCHAIN] Nonce gaps to refill: " + gaps);
+            }
+        } catch (Exception e) {
+            System.err.println("[ERROR] Nonce resync failed: " + e.getMessage());
+        }
+    }
+
+    private long pendingTransactionCount() throws IOException {
+        return web3j.ethGetTransactionCount(getFromAddress(), DefaultBlockParameterName.PENDING)
+                .send().getTransactionCount().longValue();
+    }
+
+    private static boolean isNonceTaken(String message) {
+        return message.contains("nonce too low") || message.contains("replacement transaction underpriced");
+    }
+
+    // errors a node gives before a transaction enters its pool
+    private static boolean isRejectedUnused(String message) {
+        return isUnderpriced(message)
+                || message.contains("insufficient funds")
+                || message.contains("intrinsic gas too low")
+                || message.contains("exceeds block gas limit")
+                || message.contains("fee cap");
+    }
+
+    private static boolean isUnderpriced(String message) {
+        return message.contains("underpriced") || message.contains("base fee");
+    }
+}
@@ -0,0 +1,269 @@
+package net.codejava.smartcontract;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.generated.Bytes32;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.utils.Numeric;
+
+/**
+ * Packs queued votes into Voting.voteBatch transactions. A batch is sent when
+ * it reaches the most votes that fit under the gas limit, or when its oldest
+ * vote has waited max-delay-ms. Every vote in a batch gets the batch's
+ * receipt, or an error if the contract skipped it.
+ *
+ * Voters are identified on-chain by a commitment, an HMAC-SHA256 of their
+ * username under commitment-secret. Every vote of one voter has the same
+ * commitment, so the contract counts one vote per voter and skips both
+ * resends and repeat votes; without the secret the chain can't tell, or
+ * guess, who a commitment belongs to.
+ */
+@Component
+public class VoteBatcher {
+
+    public static final Event COMMITMENT_VOTED = new Event("CommitmentVoted",
+            Arrays.asList(new TypeReference<Bytes32>(true) {}, new TypeReference<Uint256>(true) {}));
+
+    @Autowired
+    private SharedTransactionManager transactionManager;
+
+    @Autowired
+    private ReceiptTracker receiptTracker;
+
+    @Autowired
+    private ChainCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private GasOracle gasOracle;
+
+    @Value("${CONTRACT_ADDRESS}")
+    private String contractAddress;
+
+    // needs a contract deployed with voteBatch
+    @Value("${chain.batch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chain.batch.gas-limit:8000000}")
+    private long maxGas;
+
+    // fixed cost of a voteBatch call, and the cost of each vote in it
+    @Value("${chain.batch.base-gas:50000}")
+    private long baseGas;
+
+    @Value("${chain.batch.gas-per-vote:35000}")
+    private long gasPerVote;
+
+    @Value("${chain.batch.max-delay-ms:2000}")
+    private long maxDelayMs;
+
+    // required with batching, and not to be shared with any other key
+    @Value("${chain.batch.commitment-secret:}")
+    private String commitmentSecret;
+
+    private final BlockingQueue<QueuedVote> queue = new LinkedBlockingQueue<>();
+
+    private int votesPerBatch;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (commitmentSecret.isEmpty()) {
+            throw new IllegalStateException("chain.batch.commitment-secret must be set when chain.batch.enabled=true");
+        }
+        votesPerBatch = (int) Math.max(1, (maxGas - baseGas) / gasPerVote);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vote-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+        long tick = Math.max(50, maxDelayMs / 4);
+        scheduler.scheduleWithFixedDelay(this::flushIfDue, tick, tick, TimeUnit.MILLISECONDS);
+        System.out.println("[INIT] Vote batching enabled, up to " + votesPerBatch + " votes per transaction");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a vote, given its voter's commitment, for the next batch. The
+     * future completes with the receipt of the transaction that counted it.
+     */
+    public CompletableFuture<TransactionReceipt> enqueue(String commitment, BigInteger candidateId) {
+        if (!enabled) {
+            throw new IllegalStateException("Vote batching is disabled");
+        }
+        QueuedVote vote = new QueuedVote(Numeric.hexStringToByteArray(commitment), candidateId);
+        queue.add(vote);
+        if (queue.size() >= votesPerBatch) {
+            scheduler.execute(this::flushIfDue);
+        }
+        return vote.future;
+    }
+
+    /**
+     * The on-chain commitment of a voter, as 0x-prefixed hex, or null while
+     * batching is disabled.
+     */
+    public String commitmentOf(String username) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(commitmentSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return Numeric.toHexString(mac.doFinal(username.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("HmacSHA256 not available", e);
+        }
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void flushIfDue() {
+        try {
+            while (true) {
+                QueuedVote oldest = queue.peek();
+                if (oldest == null) {
+                    return;
+                }
+                boolean full = queue.size() >= votesPerBatch;
+                if (!full && System.currentTimeMillis() - oldest.queuedAt < maxDelayMs) {
+                    return;
+                }
+                List<QueuedVote> batch = new ArrayList<>(votesPerBatch);
+                queue.drainTo(batch, votesPerBatch);
+                send(batch);
+            }
+        } catch (Exception e) {
+            System.err.println("[ERROR] Vote batch flush failed: " + e.getMessage());
+        }
+    }
+
+    private void send(List<QueuedVote> batch) {
+        List<Bytes32> commitments = new ArrayList<>(batch.size());
+        List<Uint256> candidateIds = new ArrayList<>(batch.size());
+        for (QueuedVote vote : batch) {
+            commitments.add(new Bytes32(vote.commitment));
+            candidateIds.add(new Uint256(vote.candidateId));
+        }
+        Function function = new Function(
+            "voteBatch",
+            Arrays.asList(
+                new DynamicArray<>(Bytes32.class, commitments),
+                new DynamicArray<>(Uint256.class, candidateIds)
+            ),
+            Collections.emptyList()
+        );
+        try {
+            EthSendTransaction response = circuitBreaker.call(() -> {
+                EthSendTransaction sent = transactionManager.sendTransaction(
+                    gasOracle.gasPrice(),
+                    // not estimated: a batch costs less when some of its commitments were already counted
+                    BigInteger.valueOf(baseGas + gasPerVote * batch.size()),
+                    contractAddress,
+                    FunctionEncoder.encode(function),
+                    BigInteger.ZERO
+                );
+                if (sent.hasError()) {
+                    throw new ChainCircuitBreaker.NodeReplyException("Vote batch rejected: " + sent.getError().getMessage());
+                }
+                return sent;
+            });
+            System.out.println("[BLOCKCHAIN] Vote batch of " + batch.size() + " sent: " + response.getTransactionHash());
+            receiptTracker.track(response.getTransactionHash())
+                    .whenComplete((receipt, error) -> settle(batch, receipt, error));
+        } catch (Exception e) {
+            for (QueuedVote vote : batch) {
+                vote.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Completes each vote of a mined batch: counted if the receipt carries a
+     * CommitmentVoted log for it, failed otherwise.
+     */
+    private void settle(List<QueuedVote> batch, TransactionReceipt receipt, Throwable error) {
+        if (error != null || !receipt.isStatusOK()) {
+            Throwable cause = error != null ? error
+                    : new IllegalStateException("Vote batch " + receipt.getTransactionHash() + " reverted");
+            for (QueuedVote vote : batch) {
+                vote.future.completeExceptionally(cause);
+            }
+            return;
+        }
+        String eventTopic = EventEncoder.encode(COMMITMENT_VOTED);
+        Set<String> counted = new HashSet<>();
+        for (Log log : receipt.getLogs()) {
+            List<String> topics = log.getTopics();
+            if (topics.size() > 1 && eventTopic.equalsIgnoreCase(topics.get(0))) {
+                counted.add(topics.get(1).toLowerCase());
+            }
+        }
+        for (QueuedVote vote : batch) {
+            if (counted.contains(Numeric.toHexString(vote.commitment).toLowerCase())) {
+                vote.future.complete(receipt);
+            } else {
+                vote.future.completeExceptionally(new IllegalStateException(
+                        "Vote skipped by the contract, already counted or candidate inactive"));
+            }
+        }
+    }
+
+    private static class QueuedVote {
+        final byte[] commitment;
+        final BigInteger candidateId;
+        final long queuedAt = System.currentTimeMillis();
+        final CompletableFuture<TransactionReceipt> future = new CompletableFuture<>();
+
+        QueuedVote(byte[] commitment, BigInteger candidateId) {
+            this.commitment = commitment;
+            this.candidateId = candidateId;
+        }
+    }
+}
@@ -2,52 +2,100 @@ package net.codejava.smartcontract;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Bytes32;
+import org.web3j.abi.datatypes.generated.Uint256;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
-import org.web3j.crypto.Credentials;
-import org.web3j.tx.gas.DefaultGasProvider;
-import org.web3j.tx.RawTransactionManager;
-import org.web3j.tx.TransactionManager;
-import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.EthTransaction;
+import org.web3j.utils.Numeric;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 @Service
 public class VotingContractService {
     private final Web3j web3j;
-    private final Credentials credentials;
-    private final Voting votingContract;
+    private final SharedTransactionManager txManager;
     private final String contractAddress;
-    private final DefaultGasProvider gasProvider;
+    private final GasOracle gasOracle;
+    private final ChainCircuitBreaker circuitBreaker;
+    private final ChainReadCache chainReadCache;
 
     public VotingContractService(
-            @Value("${AVALANCHE_RPC_URL}") String rpcUrl,
-            @Value("${TEST_PRIVATE_KEY}") String privateKey,
+            RpcClient rpcClient,
+            SharedTransactionManager txManager,
+            ChainCircuitBreaker circuitBreaker,
+            GasOracle gasOracle,
+            ChainReadCache chainReadCache,
             @Value("${CONTRACT_ADDRESS}") String contractAddress) {
-        this.web3j = Web3j.build(new HttpService(rpcUrl));
-        this.credentials = Credentials.create(privateKey);
+        this.web3j = rpcClient.getWeb3j();
+        this.txManager = txManager;
+        this.circuitBreaker = circuitBreaker;
+        this.chainReadCache = chainReadCache;
         this.contractAddress = contractAddress;
-        this.gasProvider = new DefaultGasProvider();
-        // Use chainId 43113 for Avalanche Fuji testnet with EIP-155
-        TransactionManager txManager = new RawTransactionManager(
-            web3j, 
-            credentials,
-            43113, // Avalanche Fuji testnet chainId
-            5,     // Attempt to retry failed transactions 5 times
-            3000   // 3 second delay between retries
-        );
-        this.votingContract = Voting.load(contractAddress, web3j, txManager, gasProvider);
+        this.gasOracle = gasOracle;
     }
 
-    public TransactionReceipt vote(BigInteger candidateId) throws Exception {
-        return votingContract.vote(candidateId).send();
+    /**
+     * Signs and sends a vote and returns its transaction hash without waiting
+     * for it to be mined; hand the hash to ReceiptTracker for the outcome.
+     * Throws ChainCircuitBreaker.OpenException while the node is considered down.
+     */
+    public String submitVote(BigInteger candidateId) throws IOException {
+        Function function = new Function(
+            "vote",
+            Arrays.asList(new Uint256(candidateId)),
+            Collections.emptyList()
+        );
+        String data = FunctionEncoder.encode(function);
+        return circuitBreaker.call(() -> {
+            EthSendTransaction response = txManager.sendTransaction(
+                gasOracle.gasPrice(),
+                gasOracle.gasLimit(txManager.getFromAddress(), contractAddress, data),
+                contractAddress,
+                data,
+                BigInteger.ZERO
+            );
+            if (response.hasError()) {
+                throw new ChainCircuitBreaker.NodeReplyException("Vote transaction rejected: " + response.getError().getMessage());
+            }
+            return response.getTransactionHash();
+        });
     }
 
-    public List getActiveCandidateIds() throws Exception {
-        return votingContract.getActiveCandidateIds().send();
+    /**
+     * Whether voteBatch has already counted this commitment, so a vote sent
+     * twice can be recognised as delivered.
+     */
+    @SuppressWarnings("rawtypes")
+    public boolean isCommitmentCounted(String commitment) throws IOException {
+        Function function = new Function(
+            "votedCommitments",
+            Arrays.asList(new Bytes32(Numeric.hexStringToByteArray(commitment))),
+            Arrays.asList(new TypeReference<Bool>() {})
+        );
+        String value = chainReadCache.call(contractAddress, FunctionEncoder.encode(function));
+        List<Type> values = FunctionReturnDecoder.decode(value, function.getOutputParameters());
+        return !values.isEmpty() && (Boolean) values.get(0).getValue();
     }
 
-    public Boolean hasVoted(String address) throws Exception {
-        return votingContract.voters(address).send();
+    /**
+     * Whether the node still knows this transaction, pending or mined. One
+     * it has forgotten can't be mined any more, so its vote can be sent again.
+     */
+    public boolean isTransactionKnown(String txHash) throws IOException {
+        EthTransaction response = circuitBreaker.call(() -> web3j.ethGetTransactionByHash(txHash).send());
+        if (response.hasError()) {
+            throw new IOException("eth_getTransactionByHash failed: " + response.getError().getMessage());
+        }
+        return response.getTransaction().isPresent();
     }
 }
@@ -0,0 +1,79 @@
+package net.codejava.helper;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTest {
+
+    @Test
+    void neverForgetsAKeyThatWasPut() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("voter-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("voter-" + i), "voter-" + i);
+        }
+    }
+
+    @Test
+    void keepsEveryKeyPutConcurrently() throws Exception {
+        BloomFilter filter = new BloomFilter(40_000, 0.01);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> puts = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                puts.add(pool.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        filter.put("voter-" + thread + "-" + i);
+                    }
+                }));
+            }
+            for (Future<?> put : puts) {
+                put.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < 10_000; i++) {
+                assertTrue(filter.mightContain("voter-" + t + "-" + i));
+            }
+        }
+    }
+
+    @Test
+    void keepsNearTheSizedFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("voter-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("absent-" + i)) {
+                falsePositives++;
+            }
+        }
+        // sized for 1%, allow some slack
+        assertTrue(falsePositives < 2_000, falsePositives + " false positives in 100000");
+    }
+
+    @Test
+    void holdsKeysBeyondTheExpectedCount() {
+        BloomFilter filter = new BloomFilter(10, 0.01);
+        for (int i = 0; i < 1_000; i++) {
+            filter.put("voter-" + i);
+        }
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(filter.mightContain("voter-" + i));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package net.codejava.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class MerkleTreeTest {
+
+    @Test
+    void everyLeafProvesIntoTheRoot() {
+        // odd and even sizes, so carried-up nodes are covered too
+        for (int size = 1; size <= 17; size++) {
+            List<String> leaves = leaves(size);
+            String root = MerkleTree.root(leaves);
+            for (int i = 0; i < size; i++) {
+                assertTrue(MerkleTree.verify(leaves.get(i), MerkleTree.proof(leaves, i), root),
+                    "leaf " + i + " of " + size);
+            }
+        }
+    }
+
+    @Test
+    void proofDoesNotVerifyAnotherLeaf() {
+        List<String> leaves = leaves(8);
+        String root = MerkleTree.root(leaves);
+
+        assertFalse(MerkleTree.verify(leaves.get(4), MerkleTree.proof(leaves, 3), root));
+        assertFalse(MerkleTree.verify("forged", MerkleTree.proof(leaves, 3), root));
+    }
+
+    @Test
+    void proofDoesNotVerifyAgainstAnotherRoot() {
+        List<String> leaves = leaves(8);
+        List<String> changed = new ArrayList<>(leaves);
+        changed.set(6, "changed");
+
+        assertFalse(MerkleTree.verify(leaves.get(0), MerkleTree.proof(leaves, 0), MerkleTree.root(changed)));
+    }
+
+    @Test
+    void singleLeafHasAnEmptyProof() {
+        List<String> leaves = leaves(1);
+
+        assertTrue(MerkleTree.proof(leaves, 0).isEmpty());
+        assertTrue(MerkleTree.verify(leaves.get(0), Collections.emptyList(), MerkleTree.root(leaves)));
+    }
+
+    @Test
+    void innerNodeCannotPassForALeaf() {
+        List<String> pair = leaves(2);
+        List<String> single = Collections.singletonList(MerkleTree.root(pair));
+
+        assertNotEquals(MerkleTree.root(pair), MerkleTree.root(single));
+    }
+
+    @Test
+    void oddNodeIsCarriedUpRatherThanDuplicated() {
+        List<String> three = leaves(3);
+        List<String> four = new ArrayList<>(three);
+        four.add(three.get(2));
+
+        assertNotEquals(MerkleTree.root(three), MerkleTree.root(four));
+        assertEquals(1, MerkleTree.proof(three, 2).size());
+    }
+
+    @Test
+    void rejectsAnEmptyTreeAndOutOfRangeLeaves() {
+        assertThrows(IllegalArgumentException.class, () -> MerkleTree.root(Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> MerkleTree.proof(leaves(4), 4));
+    }
+
+    private static List<String> leaves(int count) {
+        List<String> leaves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            leaves.add(HashingCore.toHex(HashingCore.sha256().digest(("vote-" + i).getBytes())));
+        }
+        return leaves;
+    }
+}
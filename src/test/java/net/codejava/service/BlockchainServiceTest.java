@@ -0,0 +1,281 @@
+package net.codejava.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+
+import net.codejava.model.ChainCandidate;
+import net.codejava.smartcontract.ChainCircuitBreaker;
+import net.codejava.smartcontract.ChainReadCache;
+import net.codejava.smartcontract.GasOracle;
+import net.codejava.smartcontract.ReceiptTracker;
+import net.codejava.smartcontract.RpcClient;
+import net.codejava.smartcontract.SharedTransactionManager;
+
+@ExtendWith(MockitoExtension.class)
+class BlockchainServiceTest {
+
+    private static final String COUNT_CALL = FunctionEncoder.encode(
+        new Function("candidatesCount", Collections.emptyList(), Collections.emptyList()));
+
+    @Mock
+    private RpcClient rpcClient;
+
+    @Mock
+    private Web3j web3j;
+
+    @Mock
+    private Web3jService web3jService;
+
+    @Mock
+    private SharedTransactionManager transactionManager;
+
+    @Mock
+    private ReceiptTracker receiptTracker;
+
+    @Mock
+    private ChainCircuitBreaker circuitBreaker;
+
+    @Mock
+    private ChainReadCache chainReadCache;
+
+    @Mock
+    private CandidateChainIdCache candidateChainIdCache;
+
+    @Mock
+    private GasOracle gasOracle;
+
+    private BlockchainService service;
+
+    // the contract's candidates by id
+    private final TreeMap<Long, String> parties = new TreeMap<>();
+    private final AtomicLong head = new AtomicLong(100);
+    // responses the node leaves out of its next batch answer, by position in the batch
+    private final List<Integer> dropped = new ArrayList<>();
+    // candidate ids whose getCandidate the node answers with an error
+    private final List<Long> failing = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(rpcClient.getWeb3j()).thenReturn(web3j);
+        // the node, for the tests that read from it
+        lenient().when(web3j.newBatch()).thenAnswer(invocation -> new BatchRequest(web3jService));
+        lenient().when(web3j.ethCall(any(Transaction.class), any(DefaultBlockParameter.class))).thenAnswer(invocation ->
+            new Request<>("eth_call", Arrays.asList(invocation.getArgument(0), invocation.getArgument(1)),
+                web3jService, EthCall.class));
+        lenient().when(web3jService.sendBatch(any(BatchRequest.class))).thenAnswer(invocation -> answer(invocation.getArgument(0)));
+        lenient().when(chainReadCache.get(eq("getAllCandidates"), any())).thenAnswer(invocation ->
+            ((ChainReadCache.BlockRead<?>) invocation.getArgument(1)).read(head.get()));
+        service = new BlockchainService(rpcClient, transactionManager, receiptTracker, circuitBreaker, chainReadCache,
+            candidateChainIdCache, gasOracle, "0x5fbdb2315678afecb367f032d93f642f64180aa3");
+    }
+
+    @Test
+    void matchesCandidatesToTheirRequestsWhateverTheAnswerOrder() {
+        parties.put(1L, "Red");
+        parties.put(2L, "Green");
+        parties.put(3L, "Blue");
+
+        List<ChainCandidate> candidates = service.getAllCandidates().getCandidates();
+
+        assertEquals(3, candidates.size());
+        for (int i = 0; i < 3; i++) {
+            ChainCandidate candidate = candidates.get(i);
+            assertEquals(i + 1, candidate.getCandidateId());
+            assertEquals(parties.get(candidate.getCandidateId()), candidate.getParty());
+            assertEquals(candidate.getCandidateId() * 10, candidate.getVoteCount());
+        }
+    }
+
+    @Test
+    void readsTheKnownCandidatesAlongWithTheCountInOneBatch() throws Exception {
+        parties.put(1L, "Red");
+        parties.put(2L, "Green");
+        service.getAllCandidates();
+
+        head.incrementAndGet();
+        List<ChainCandidate> candidates = service.getAllCandidates().getCandidates();
+
+        // two batches for the first read, which had nothing to guess from, then one
+        verify(web3jService, times(3)).sendBatch(any(BatchRequest.class));
+        assertEquals(Arrays.asList("Red", "Green"), partiesOf(candidates));
+    }
+
+    @Test
+    void fetchesCandidatesAddedSinceTheLastRead() {
+        parties.put(1L, "Red");
+        service.getAllCandidates();
+
+        parties.put(2L, "Green");
+        parties.put(3L, "Blue");
+        head.incrementAndGet();
+
+        assertEquals(Arrays.asList("Red", "Green", "Blue"), partiesOf(service.getAllCandidates().getCandidates()));
+    }
+
+    @Test
+    void dropsGuessesBeyondTheCount() {
+        parties.put(1L, "Red");
+        parties.put(2L, "Green");
+        parties.put(3L, "Blue");
+        service.getAllCandidates();
+
+        // redeployed with a single candidate
+        parties.remove(2L);
+        parties.remove(3L);
+        head.incrementAndGet();
+
+        assertEquals(Collections.singletonList("Red"), partiesOf(service.getAllCandidates().getCandidates()));
+    }
+
+    @Test
+    void toleratesErrorsForGuessesBeyondTheCount() {
+        parties.put(1L, "Red");
+        parties.put(2L, "Green");
+        service.getAllCandidates();
+
+        parties.remove(2L);
+        failing.add(2L);
+        head.incrementAndGet();
+
+        assertEquals(Collections.singletonList("Red"), partiesOf(service.getAllCandidates().getCandidates()));
+    }
+
+    @Test
+    void failsTheReadWhenACountedCandidateErrors() {
+        parties.put(1L, "Red");
+        parties.put(2L, "Green");
+        failing.add(2L);
+
+        assertThrows(RuntimeException.class, () -> service.getAllCandidates());
+        // no partial snapshot is kept to be served later
+        assertNull(ReflectionTestUtils.getField(service, "candidateSnapshot"));
+
+        failing.clear();
+        assertEquals(Arrays.asList("Red", "Green"), partiesOf(service.getAllCandidates().getCandidates()));
+    }
+
+    @Test
+    void failsTheReadWhenAResponseIsMissing() {
+        parties.put(1L, "Red");
+        parties.put(2L, "Green");
+        service.getAllCandidates();
+
+        head.incrementAndGet();
+        dropped.add(2);
+
+        assertThrows(RuntimeException.class, () -> service.getAllCandidates());
+    }
+
+    @Test
+    void seedsTheIdCacheWhenNothingIsIndexedYet() {
+        parties.put(1L, "Red");
+        parties.put(2L, "Green");
+        when(candidateChainIdCache.isEmpty()).thenReturn(true);
+
+        service.seedCandidateIds();
+
+        verify(candidateChainIdCache).seed(eq(100L), argThat(candidates -> candidates.size() == 2));
+    }
+
+    @Test
+    void leavesAnIndexedIdCacheAlone() throws Exception {
+        when(candidateChainIdCache.isEmpty()).thenReturn(false);
+
+        service.seedCandidateIds();
+
+        verify(candidateChainIdCache, never()).seed(anyLong(), any());
+        verify(web3jService, never()).sendBatch(any(BatchRequest.class));
+    }
+
+    // answers in reverse order, the way a node is free to
+    private BatchResponse answer(BatchRequest batch) {
+        List<Request<?, ? extends Response<?>>> requests = batch.getRequests();
+        List<Response<?>> responses = new ArrayList<>();
+        for (int i = requests.size() - 1; i >= 0; i--) {
+            if (dropped.contains(i)) {
+                continue;
+            }
+            Request<?, ? extends Response<?>> request = requests.get(i);
+            String data = ((Transaction) request.getParams().get(0)).getData();
+            EthCall response = new EthCall();
+            response.setId(request.getId());
+            if (!COUNT_CALL.equals(data) && failing.contains(idOf(data))) {
+                response.setError(new Response.Error(3, "execution reverted"));
+            } else {
+                response.setResult("0x" + (COUNT_CALL.equals(data) ? encode(new Uint256(parties.size())) : candidate(data)));
+            }
+            responses.add(response);
+        }
+        dropped.clear();
+        return new BatchResponse(requests, responses);
+    }
+
+    private String candidate(String data) {
+        long id = idOf(data);
+        String party = parties.get(id);
+        if (party == null) {
+            // the contract's getCandidate has nothing at this id, all fields zero
+            return encode(new Uint256(0), new Utf8String(""), new Utf8String(""), new Utf8String(""),
+                new Uint256(0), new Bool(false));
+        }
+        return encode(new Uint256(id), new Utf8String(party + " candidate"), new Utf8String(party),
+            new Utf8String("image"), new Uint256(id * 10), new Bool(true));
+    }
+
+    private static long idOf(String data) {
+        return new BigInteger(data.substring(10), 16).longValue();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static String encode(Type... values) {
+        return FunctionEncoder.encodeConstructor(Arrays.<Type>asList(values));
+    }
+
+    private static List<String> partiesOf(List<ChainCandidate> candidates) {
+        List<String> parties = new ArrayList<>();
+        for (ChainCandidate candidate : candidates) {
+            parties.add(candidate.getParty());
+        }
+        return parties;
+    }
+}
@@ -0,0 +1,80 @@
+package net.codejava.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import net.codejava.model.ChainCandidate;
+import net.codejava.repository.ChainCandidateRepo;
+
+@ExtendWith(MockitoExtension.class)
+class CandidateChainIdCacheTest {
+
+    @Mock
+    private ChainCandidateRepo chainCandidateRepo;
+
+    @InjectMocks
+    private CandidateChainIdCache cache;
+
+    @Test
+    void resolvesFromTheSeedUntilTheIndexerPassesItsBlock() {
+        when(chainCandidateRepo.findAll()).thenReturn(new ArrayList<>());
+        cache.load();
+        assertTrue(cache.isEmpty());
+
+        cache.seed(500, Arrays.asList(candidate(1, "Red", true), candidate(2, "Green", false)));
+
+        assertFalse(cache.isEmpty());
+        assertEquals(Long.valueOf(1), cache.resolve("Red"));
+        // removed before the seed was read
+        assertNull(cache.resolve("Green"));
+
+        cache.indexedThrough(499);
+        assertEquals(Long.valueOf(1), cache.resolve("Red"));
+
+        cache.indexedThrough(500);
+        assertNull(cache.resolve("Red"));
+    }
+
+    @Test
+    void indexedCandidatesWinOverTheSeed() {
+        when(chainCandidateRepo.findAll()).thenReturn(new ArrayList<>());
+        cache.load();
+        cache.seed(500, Collections.singletonList(candidate(1, "Red", true)));
+
+        cache.candidateAdded(4, "Red");
+
+        assertEquals(Long.valueOf(4), cache.resolve("Red"));
+    }
+
+    @Test
+    void aCandidateRemovedAfterTheSeedHasNoId() {
+        when(chainCandidateRepo.findAll()).thenReturn(new ArrayList<>());
+        cache.load();
+        cache.seed(500, Collections.singletonList(candidate(1, "Red", true)));
+
+        cache.candidateRemoved(1);
+
+        assertNull(cache.resolve("Red"));
+    }
+
+    private static ChainCandidate candidate(long id, String party, boolean active) {
+        ChainCandidate candidate = new ChainCandidate();
+        candidate.setCandidateId(id);
+        candidate.setParty(party);
+        candidate.setActive(active);
+        return candidate;
+    }
+}
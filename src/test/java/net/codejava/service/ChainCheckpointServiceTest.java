@@ -0,0 +1,282 @@
+package net.codejava.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import net.codejava.helper.HashingCore;
+import net.codejava.model.Block;
+import net.codejava.model.ChainCheckpoint;
+import net.codejava.model.Votedata;
+import net.codejava.repository.ChainCheckpointRepo;
+
+@ExtendWith(MockitoExtension.class)
+class ChainCheckpointServiceTest {
+
+    private static final String SECRET = "checkpoint-secret";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ChainCheckpointRepo checkpointRepo;
+
+    @Mock
+    private ChainHeadSequencer chainHeadSequencer;
+
+    @InjectMocks
+    private ChainCheckpointService service;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "secret", SECRET);
+        ReflectionTestUtils.setField(service, "checkpointInterval", 1000L);
+        // runs are triggered by hand
+        ReflectionTestUtils.setField(service, "verifyIntervalMs", 3_600_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (ReflectionTestUtils.getField(service, "scheduler") != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    void verifiesWithoutCheckpointsWhenNoSecretIsSet() {
+        ReflectionTestUtils.setField(service, "secret", "");
+        ReflectionTestUtils.setField(service, "checkpointInterval", 3L);
+        service.start();
+        streamVotes(chain(3));
+
+        service.verifyNewBlocks();
+
+        assertEquals(3L, service.getStatus().get("verifiedSequence"));
+        assertEquals(false, service.getStatus().get("checkpointsEnabled"));
+        verifyNoInteractions(checkpointRepo);
+    }
+
+    @Test
+    void resumesFromACheckpointSignedWithTheSecret() {
+        when(checkpointRepo.findTopByOrderBySequenceDesc()).thenReturn(checkpoint(500, "tip-hash", SECRET));
+
+        service.start();
+
+        assertEquals(500L, service.getStatus().get("verifiedSequence"));
+        assertEquals("tip-hash", service.getStatus().get("verifiedHash"));
+    }
+
+    @Test
+    void ignoresACheckpointSignedWithAnotherKey() {
+        when(checkpointRepo.findTopByOrderBySequenceDesc()).thenReturn(checkpoint(500, "tip-hash", "wallet-key"));
+
+        service.start();
+
+        assertEquals(0L, service.getStatus().get("verifiedSequence"));
+    }
+
+    @Test
+    void ignoresACheckpointWhoseTipWasAltered() {
+        ChainCheckpoint checkpoint = checkpoint(500, "tip-hash", SECRET);
+        checkpoint.setTipHash("other-hash");
+        when(checkpointRepo.findTopByOrderBySequenceDesc()).thenReturn(checkpoint);
+
+        service.start();
+
+        assertEquals(0L, service.getStatus().get("verifiedSequence"));
+    }
+
+    @Test
+    void signsTheCheckpointsItWrites() {
+        ReflectionTestUtils.setField(service, "checkpointInterval", 3L);
+        List<Votedata> votes = chain(3);
+        streamVotes(votes);
+
+        service.verifyNewBlocks();
+
+        ArgumentCaptor<ChainCheckpoint> saved = ArgumentCaptor.forClass(ChainCheckpoint.class);
+        verify(checkpointRepo).save(saved.capture());
+        assertEquals(3, saved.getValue().getSequence());
+        assertEquals(votes.get(2).getCurrhash(), saved.getValue().getTipHash());
+        assertEquals(hmac(SECRET, 3, votes.get(2).getCurrhash()), saved.getValue().getSignature());
+    }
+
+    @Test
+    void stopsAtATamperedBlockUntilReverified() {
+        service.start();
+        List<Votedata> votes = chain(3);
+        Votedata tampered = copy(votes.get(1));
+        tampered.setCandidate("someone else");
+        List<Votedata> stored = new ArrayList<>(votes);
+        stored.set(1, tampered);
+        streamVotes(stored);
+
+        service.verifyNewBlocks();
+        assertEquals(2L, service.getStatus().get("tamperedSequence"));
+        assertEquals(1L, service.getStatus().get("verifiedSequence"));
+
+        // restored, but the failure sticks until an explicit re-verify
+        stored.set(1, votes.get(1));
+        service.verifyNewBlocks();
+        assertEquals(1L, service.getStatus().get("verifiedSequence"));
+
+        service.reverify();
+        service.verifyNewBlocks();
+        assertNull(service.getStatus().get("tamperedSequence"));
+        assertEquals(3L, service.getStatus().get("verifiedSequence"));
+        verify(checkpointRepo, atLeastOnce()).findTopByOrderBySequenceDesc();
+    }
+
+    @Test
+    void firstRunRejectsAChainMissingItsFirstBlocks() {
+        List<Votedata> votes = chain(3);
+        streamVotes(votes.subList(1, 3));
+
+        service.verifyNewBlocks();
+
+        assertEquals(2L, service.getStatus().get("tamperedSequence"));
+        assertEquals(0L, service.getStatus().get("verifiedSequence"));
+    }
+
+    @Test
+    void firstRunContinuesFromTheVotesWrittenBeforeSequencing() {
+        Votedata legacyTip = new Votedata();
+        legacyTip.setCurrhash("legacy-hash");
+        when(mongoTemplate.count(any(Query.class), eq(Votedata.class))).thenReturn(4L);
+        when(mongoTemplate.findOne(any(Query.class), eq(Votedata.class))).thenReturn(legacyTip);
+        streamVotes(chain(5, 3, "legacy-hash"));
+
+        service.verifyNewBlocks();
+
+        assertNull(service.getStatus().get("tamperedSequence"));
+        assertEquals(7L, service.getStatus().get("verifiedSequence"));
+    }
+
+    @Test
+    void firstRunRejectsVotesCutAtTheLegacyBoundary() {
+        Votedata legacyTip = new Votedata();
+        legacyTip.setCurrhash("legacy-hash");
+        when(mongoTemplate.count(any(Query.class), eq(Votedata.class))).thenReturn(4L);
+        when(mongoTemplate.findOne(any(Query.class), eq(Votedata.class))).thenReturn(legacyTip);
+        // the chain was relinked onto another tip
+        streamVotes(chain(5, 3, "other-hash"));
+
+        service.verifyNewBlocks();
+
+        assertEquals(5L, service.getStatus().get("tamperedSequence"));
+    }
+
+    private void streamVotes(List<Votedata> votes) {
+        when(mongoTemplate.stream(any(Query.class), eq(Votedata.class))).thenAnswer(invocation -> {
+            long after = (Long) ReflectionTestUtils.getField(service, "verifiedSequence");
+            List<Votedata> pending = new ArrayList<>();
+            for (Votedata vote : votes) {
+                if (vote.getSequence() > after) {
+                    pending.add(vote);
+                }
+            }
+            return closeable(pending.iterator());
+        });
+    }
+
+    private static List<Votedata> chain(int length) {
+        return chain(1, length, ChainHeadSequencer.GENESIS_HASH);
+    }
+
+    private static List<Votedata> chain(long firstSequence, int length, String prevhash) {
+        List<Votedata> votes = new ArrayList<>();
+        for (long i = firstSequence; i < firstSequence + length; i++) {
+            String[] data = { "voter-" + i, "Voter " + i, "party" };
+            Block block = new Block(data, prevhash);
+            Votedata vote = new Votedata();
+            vote.setSequence(i);
+            vote.setUsername(data[0]);
+            vote.setVoterName(data[1]);
+            vote.setCandidate(data[2]);
+            vote.setPrevhash(prevhash);
+            vote.setCurrhash(block.getBlockHash());
+            vote.setBlockTimestamp(block.getTimestamp());
+            vote.setNonce(block.getNonce());
+            vote.setHashVersion(block.getHashVersion());
+            votes.add(vote);
+            prevhash = block.getBlockHash();
+        }
+        return votes;
+    }
+
+    private static Votedata copy(Votedata vote) {
+        Votedata copy = new Votedata();
+        copy.setSequence(vote.getSequence());
+        copy.setUsername(vote.getUsername());
+        copy.setVoterName(vote.getVoterName());
+        copy.setCandidate(vote.getCandidate());
+        copy.setPrevhash(vote.getPrevhash());
+        copy.setCurrhash(vote.getCurrhash());
+        copy.setBlockTimestamp(vote.getBlockTimestamp());
+        copy.setNonce(vote.getNonce());
+        copy.setHashVersion(vote.getHashVersion());
+        return copy;
+    }
+
+    private static ChainCheckpoint checkpoint(long sequence, String tipHash, String key) {
+        ChainCheckpoint checkpoint = new ChainCheckpoint();
+        checkpoint.setSequence(sequence);
+        checkpoint.setTipHash(tipHash);
+        checkpoint.setSignature(hmac(key, sequence, tipHash));
+        return checkpoint;
+    }
+
+    private static String hmac(String key, long sequence, String tipHash) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HashingCore.toHex(mac.doFinal((sequence + ":" + tipHash).getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static CloseableIterator<Votedata> closeable(Iterator<Votedata> votes) {
+        return new CloseableIterator<Votedata>() {
+            @Override
+            public boolean hasNext() {
+                return votes.hasNext();
+            }
+
+            @Override
+            public Votedata next() {
+                return votes.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,148 @@
+package net.codejava.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import net.codejava.model.Votedata;
+import net.codejava.repository.VoteRepo;
+
+@ExtendWith(MockitoExtension.class)
+class ChainHeadSequencerTest {
+
+    @Mock
+    private VoteRepo voterepo;
+
+    @InjectMocks
+    private ChainHeadSequencer sequencer;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(sequencer, "recoverAttempts", 3);
+        ReflectionTestUtils.setField(sequencer, "recoverBackoffMs", 0L);
+        ReflectionTestUtils.setField(sequencer, "miningTimeoutMs", 2000L);
+    }
+
+    @Test
+    void linksEachBlockOntoThePreviousOne() throws Exception {
+        sequencer.recover();
+
+        Votedata first = append("alice");
+        Votedata second = append("bob");
+
+        assertEquals(1, first.getSequence());
+        assertEquals(ChainHeadSequencer.GENESIS_HASH, first.getPrevhash());
+        assertEquals(2, second.getSequence());
+        assertEquals(first.getCurrhash(), second.getPrevhash());
+        assertEquals(second.getCurrhash(), sequencer.getTipHash());
+        assertTrue(ChainAuditService.hashMatches(first));
+        assertTrue(ChainAuditService.hashMatches(second));
+    }
+
+    @Test
+    void resumesFromTheStoredTail() throws Exception {
+        when(voterepo.findTopByOrderBySequenceDesc()).thenReturn(stored(41, "tail-hash"));
+        sequencer.recover();
+
+        Votedata vote = append("alice");
+
+        assertEquals(42, vote.getSequence());
+        assertEquals("tail-hash", vote.getPrevhash());
+    }
+
+    @Test
+    void continuesAfterVotesWrittenBeforeSequencing() throws Exception {
+        when(voterepo.findTopByOrderByDateDesc()).thenReturn(stored(0, "legacy-hash"));
+        when(voterepo.count()).thenReturn(7L);
+        sequencer.recover();
+
+        Votedata vote = append("alice");
+
+        assertEquals(8, vote.getSequence());
+        assertEquals("legacy-hash", vote.getPrevhash());
+    }
+
+    @Test
+    void retriesRecoveryUntilMongoAnswers() throws Exception {
+        when(voterepo.findTopByOrderBySequenceDesc())
+            .thenThrow(new RuntimeException("connection refused"))
+            .thenReturn(stored(5, "tail-hash"));
+
+        sequencer.recover();
+
+        assertEquals(5, sequencer.getTipSequence());
+        assertEquals("tail-hash", sequencer.getTipHash());
+    }
+
+    @Test
+    void failsStartupRatherThanRestartingAtGenesis() {
+        when(voterepo.findTopByOrderBySequenceDesc()).thenThrow(new RuntimeException("connection refused"));
+
+        assertThrows(IllegalStateException.class, sequencer::recover);
+        verify(voterepo, times(3)).findTopByOrderBySequenceDesc();
+    }
+
+    @Test
+    void resyncMovesTheTipBackToWhatWasStored() throws Exception {
+        sequencer.recover();
+        Votedata stored = append("alice");
+        append("bob");
+
+        // only the first vote made it to Mongo
+        when(voterepo.findTopByOrderBySequenceDesc()).thenReturn(stored);
+        sequencer.resync();
+        Votedata next = append("carol");
+
+        assertEquals(2, next.getSequence());
+        assertEquals(stored.getCurrhash(), next.getPrevhash());
+    }
+
+    @Test
+    void rejectsABlockThatCouldNotBeMinedInTime() throws Exception {
+        sequencer.recover();
+        Votedata first = append("alice");
+        ReflectionTestUtils.setField(sequencer, "difficulty", 64);
+        ReflectionTestUtils.setField(sequencer, "miningTimeoutMs", 1L);
+
+        assertThrows(IllegalStateException.class, () -> append("bob"));
+        assertEquals(1, sequencer.getTipSequence());
+        assertEquals(first.getCurrhash(), sequencer.getTipHash());
+    }
+
+    @Test
+    void minedBlocksMeetTheDifficulty() throws Exception {
+        ReflectionTestUtils.setField(sequencer, "difficulty", 1);
+        sequencer.recover();
+
+        Votedata vote = append("alice");
+
+        assertTrue(vote.getCurrhash().startsWith("0"));
+        assertTrue(ChainAuditService.hashMatches(vote));
+    }
+
+    private Votedata append(String username) {
+        Votedata vote = new Votedata();
+        vote.setUsername(username);
+        vote.setCandidate("party");
+        sequencer.append(new String[] { username, username + " name", "party" }, vote);
+        return vote;
+    }
+
+    private static Votedata stored(long sequence, String currhash) {
+        Votedata vote = new Votedata();
+        vote.setSequence(sequence);
+        vote.setCurrhash(currhash);
+        return vote;
+    }
+}
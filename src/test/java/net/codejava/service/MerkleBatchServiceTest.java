@@ -0,0 +1,115 @@
+package net.codejava.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import net.codejava.model.VoteBatch;
+import net.codejava.model.Votedata;
+import net.codejava.repository.VoteBatchRepo;
+import net.codejava.repository.VoteRepo;
+
+@ExtendWith(MockitoExtension.class)
+class MerkleBatchServiceTest {
+
+    @Mock
+    private VoteBatchRepo voteBatchRepo;
+
+    @Mock
+    private VoteRepo voterepo;
+
+    @Mock
+    private VoteBatchWriter voteBatchWriter;
+
+    @Mock
+    private VoteReceiptService voteReceiptService;
+
+    @Mock
+    private ScheduledExecutorService scheduler;
+
+    @InjectMocks
+    private MerkleBatchService service;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        ReflectionTestUtils.setField(service, "maxDelayMs", 3_600_000L);
+        // the seal thread, run by hand
+        ReflectionTestUtils.setField(service, "scheduler", scheduler);
+    }
+
+    @Test
+    void addingVotesOnlyWakesTheSealThread() {
+        service.add(votes(1, 2));
+
+        verify(scheduler).execute(any());
+        verifyNoInteractions(voteBatchWriter, voteBatchRepo);
+    }
+
+    @Test
+    void doesNotWakeTheSealThreadBeforeABatchIsFull() {
+        service.add(votes(1));
+
+        verify(scheduler, never()).execute(any());
+    }
+
+    @Test
+    void theSealThreadSealsEveryFullBatch() {
+        service.add(votes(1, 2, 3, 4, 5));
+
+        sealTick();
+
+        verify(voteBatchWriter).assignBatch(1, 2, 1);
+        verify(voteBatchWriter).assignBatch(3, 4, 2);
+        ArgumentCaptor<VoteBatch> saved = ArgumentCaptor.forClass(VoteBatch.class);
+        verify(voteBatchRepo, times(2)).save(saved.capture());
+        assertEquals(saved.getAllValues().get(0).getBatchHash(), saved.getAllValues().get(1).getPrevBatchHash());
+    }
+
+    @Test
+    void keepsTheVotesOfAFailedSealForTheNextTick() {
+        when(voteBatchRepo.save(any(VoteBatch.class)))
+            .thenThrow(new RuntimeException("connection refused"))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+        service.add(votes(1, 2));
+
+        sealTick();
+        sealTick();
+
+        verify(voteBatchWriter, times(2)).assignBatch(1, 2, 1);
+        verify(voteBatchRepo, times(2)).save(any(VoteBatch.class));
+    }
+
+    private void sealTick() {
+        ReflectionTestUtils.invokeMethod(service, "sealIfDue");
+    }
+
+    private static List<Votedata> votes(long... sequences) {
+        List<Votedata> votes = new ArrayList<>();
+        for (long sequence : sequences) {
+            Votedata vote = new Votedata();
+            vote.setSequence(sequence);
+            vote.setCurrhash("hash-" + sequence);
+            votes.add(vote);
+        }
+        return votes;
+    }
+}
@@ -0,0 +1,252 @@
+package net.codejava.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import net.codejava.model.Votedata;
+import net.codejava.smartcontract.ChainCircuitBreaker;
+import net.codejava.smartcontract.ReceiptTracker;
+import net.codejava.smartcontract.VoteBatcher;
+import net.codejava.smartcontract.VotingContractService;
+
+@ExtendWith(MockitoExtension.class)
+class VoteOutboxRelayTest {
+
+    @Mock
+    private VoteBatchWriter voteBatchWriter;
+
+    @Mock
+    private VotingContractService votingContractService;
+
+    @Mock
+    private ReceiptTracker receiptTracker;
+
+    @Mock
+    private VoteBatcher voteBatcher;
+
+    @Mock
+    private ChainCircuitBreaker circuitBreaker;
+
+    @Mock
+    private CandidateChainIdCache candidateChainIdCache;
+
+    @InjectMocks
+    private VoteOutboxRelay relay;
+
+    // every outcome written back, in order
+    private final List<VoteBatchWriter.ChainOutcome> written = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(relay, "batchSize", 100);
+        ReflectionTestUtils.setField(relay, "leaseMs", 600_000L);
+        ReflectionTestUtils.setField(relay, "maxAttempts", 10);
+        ReflectionTestUtils.setField(relay, "retryBackoffMs", 2000L);
+        lenient().when(circuitBreaker.isCallPermitted()).thenReturn(true);
+        lenient().doAnswer(invocation -> {
+            written.addAll(invocation.getArgument(0));
+            return null;
+        }).when(voteBatchWriter).updateChainStatus(any());
+    }
+
+    @Test
+    void confirmsAVoteOnceItsReceiptArrives() throws Exception {
+        Votedata vote = claimed("vote-1", 1, null);
+        when(candidateChainIdCache.resolve("party")).thenReturn(3L);
+        when(votingContractService.submitVote(BigInteger.valueOf(3))).thenReturn("0xtx");
+        when(receiptTracker.track("0xtx")).thenReturn(CompletableFuture.completedFuture(receipt("0xtx", "0x1")));
+        claim(vote);
+
+        runRelay();
+        claimNothing();
+        runRelay();
+
+        assertEquals(2, written.size());
+        assertOutcome(written.get(0), Votedata.CHAIN_SUBMITTED, "0xtx", 1);
+        assertOutcome(written.get(1), Votedata.CHAIN_CONFIRMED, "0xtx", 1);
+        assertNull(written.get(1).getNextChainAttempt());
+    }
+
+    @Test
+    void retriesAFailedSendWithBackoffAndKeepsItsHash() throws Exception {
+        Votedata vote = claimed("vote-1", 2, "0xold");
+        when(candidateChainIdCache.resolve("party")).thenReturn(3L);
+        when(votingContractService.isTransactionKnown("0xold")).thenReturn(false);
+        when(votingContractService.submitVote(BigInteger.valueOf(3))).thenThrow(new IOException("connection reset"));
+        claim(vote);
+
+        long before = System.currentTimeMillis();
+        runRelay();
+
+        assertEquals(1, written.size());
+        VoteBatchWriter.ChainOutcome outcome = written.get(0);
+        assertOutcome(outcome, Votedata.CHAIN_PENDING, "0xold", 2);
+        // second attempt, so twice the base backoff
+        long delay = outcome.getNextChainAttempt().getTime() - before;
+        assertTrue(delay >= 4000 && delay < 5000, "retry in " + delay + "ms");
+    }
+
+    @Test
+    void givesUpAfterTheLastAttempt() throws Exception {
+        Votedata vote = claimed("vote-1", 10, null);
+        when(candidateChainIdCache.resolve("party")).thenReturn(3L);
+        when(votingContractService.submitVote(BigInteger.valueOf(3))).thenThrow(new IOException("connection reset"));
+        claim(vote);
+
+        runRelay();
+
+        assertOutcome(written.get(0), Votedata.CHAIN_FAILED, null, 10);
+    }
+
+    @Test
+    void waitsForAKnownTransactionInsteadOfSendingAgain() throws Exception {
+        Votedata vote = claimed("vote-1", 2, "0xold");
+        when(candidateChainIdCache.resolve("party")).thenReturn(3L);
+        when(votingContractService.isTransactionKnown("0xold")).thenReturn(true);
+        when(receiptTracker.track("0xold")).thenReturn(CompletableFuture.completedFuture(receipt("0xold", "0x1")));
+        claim(vote);
+
+        runRelay();
+        claimNothing();
+        runRelay();
+
+        verify(votingContractService, never()).submitVote(any());
+        assertOutcome(written.get(written.size() - 1), Votedata.CHAIN_CONFIRMED, "0xold", 2);
+    }
+
+    @Test
+    void marksARevertedVoteFailedWithoutRetrying() throws Exception {
+        Votedata vote = claimed("vote-1", 1, null);
+        when(candidateChainIdCache.resolve("party")).thenReturn(3L);
+        when(votingContractService.submitVote(BigInteger.valueOf(3))).thenReturn("0xtx");
+        when(receiptTracker.track("0xtx")).thenReturn(CompletableFuture.completedFuture(receipt("0xtx", "0x0")));
+        claim(vote);
+
+        runRelay();
+        claimNothing();
+        runRelay();
+
+        assertOutcome(written.get(written.size() - 1), Votedata.CHAIN_FAILED, "0xtx", 1);
+    }
+
+    @Test
+    void defersAVoteRefusedByTheOpenBreakerWithoutCountingTheAttempt() throws Exception {
+        Votedata vote = claimed("vote-1", 3, null);
+        when(candidateChainIdCache.resolve("party")).thenReturn(3L);
+        when(votingContractService.submitVote(BigInteger.valueOf(3)))
+            .thenThrow(new ChainCircuitBreaker.OpenException("Blockchain circuit is open, call refused"));
+        claim(vote);
+
+        runRelay();
+
+        assertOutcome(written.get(0), Votedata.CHAIN_DEFERRED, null, 2);
+    }
+
+    @Test
+    void defersAVoteForACandidateNotOnChainYetWithoutCountingTheAttempt() throws Exception {
+        // its last attempt, which would otherwise fail it for good
+        Votedata vote = claimed("vote-1", 10, null);
+        when(candidateChainIdCache.resolve("party")).thenReturn(null);
+        claim(vote);
+
+        long before = System.currentTimeMillis();
+        runRelay();
+
+        VoteBatchWriter.ChainOutcome outcome = written.get(0);
+        assertOutcome(outcome, Votedata.CHAIN_DEFERRED, null, 9);
+        assertTrue(outcome.getNextChainAttempt().getTime() - before >= 2000);
+        verify(votingContractService, never()).submitVote(any());
+    }
+
+    @Test
+    void confirmsAFailedBatchDeliveryThatAnEarlierOneAlreadyCounted() throws Exception {
+        Votedata vote = claimed("vote-1", 2, null);
+        vote.setChainKey("0xcommitment");
+        when(voteBatcher.isEnabled()).thenReturn(true);
+        when(candidateChainIdCache.resolve("party")).thenReturn(3L);
+        CompletableFuture<TransactionReceipt> skipped = new CompletableFuture<>();
+        skipped.completeExceptionally(new IllegalStateException("Vote skipped by the contract"));
+        when(voteBatcher.enqueue("0xcommitment", BigInteger.valueOf(3))).thenReturn(skipped);
+        when(votingContractService.isCommitmentCounted("0xcommitment")).thenReturn(true);
+        claim(vote);
+
+        runRelay();
+        claimNothing();
+        runRelay();
+
+        assertOutcome(written.get(written.size() - 1), Votedata.CHAIN_CONFIRMED, null, 2);
+    }
+
+    @Test
+    void holdsBackWhileTheBreakerIsOpen() {
+        when(circuitBreaker.isCallPermitted()).thenReturn(false);
+
+        runRelay();
+
+        verify(voteBatchWriter, never()).claimOutbox(any(), any(), anyInt());
+    }
+
+    private void runRelay() {
+        ReflectionTestUtils.invokeMethod(relay, "relay");
+    }
+
+    private void claim(Votedata vote) {
+        when(voteBatchWriter.claimOutbox(any(Date.class), any(Date.class), anyInt()))
+            .thenReturn(Collections.singletonList(vote));
+    }
+
+    private void claimNothing() {
+        when(voteBatchWriter.claimOutbox(any(Date.class), any(Date.class), anyInt()))
+            .thenReturn(Collections.emptyList());
+    }
+
+    // as claimOutbox hands it out, attempts already counting this one
+    private static Votedata claimed(String id, int attempts, String txhash) {
+        Votedata vote = new Votedata();
+        vote.setId(id);
+        vote.setUsername("voter");
+        vote.setCandidate("party");
+        vote.setChainStatus(Votedata.CHAIN_SUBMITTED);
+        vote.setChainAttempts(attempts);
+        vote.setTxhash(txhash);
+        return vote;
+    }
+
+    private static TransactionReceipt receipt(String txHash, String status) {
+        TransactionReceipt receipt = new TransactionReceipt();
+        receipt.setTransactionHash(txHash);
+        receipt.setStatus(status);
+        return receipt;
+    }
+
+    private static void assertOutcome(VoteBatchWriter.ChainOutcome outcome, String status, String txhash, int attempts) {
+        assertEquals("vote-1", outcome.getId());
+        assertEquals(status, outcome.getChainStatus());
+        assertEquals(txhash, outcome.getTxhash());
+        assertEquals(attempts, outcome.getChainAttempts());
+    }
+}
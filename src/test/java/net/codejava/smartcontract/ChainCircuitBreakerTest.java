@@ -0,0 +1,138 @@
+package net.codejava.smartcontract;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ChainCircuitBreakerTest {
+
+    private ChainCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        breaker = new ChainCircuitBreaker();
+        ReflectionTestUtils.setField(breaker, "windowSize", 4);
+        ReflectionTestUtils.setField(breaker, "minCalls", 4);
+        ReflectionTestUtils.setField(breaker, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(breaker, "slowCallMs", 60_000L);
+        ReflectionTestUtils.setField(breaker, "slowCallRateThreshold", 0.5);
+        ReflectionTestUtils.setField(breaker, "openMs", 60_000L);
+        ReflectionTestUtils.setField(breaker, "halfOpenProbes", 2);
+    }
+
+    @Test
+    void opensOnceEnoughTransportErrorsAreInTheWindow() throws Exception {
+        succeed();
+        succeed();
+        fail(new IOException("connection refused"));
+        assertEquals(ChainCircuitBreaker.State.CLOSED, breaker.getState());
+
+        fail(new IOException("read timed out"));
+
+        assertEquals(ChainCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isCallPermitted());
+        assertThrows(ChainCircuitBreaker.OpenException.class, this::succeed);
+    }
+
+    @Test
+    void countsUncheckedTransportErrorsAsFailures() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertThrows(UncheckedIOException.class, () -> breaker.call(() -> {
+                throw new UncheckedIOException(new IOException("connection reset"));
+            }));
+        }
+
+        assertEquals(ChainCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void errorsTheNodeAnsweredWithDoNotOpenIt() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            fail(new ChainCircuitBreaker.NodeReplyException("execution reverted"));
+        }
+
+        assertEquals(ChainCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getStats().get("windowFailures"));
+    }
+
+    @Test
+    void bugsInTheCallerDoNotOpenIt() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            assertThrows(IllegalArgumentException.class, () -> breaker.call(() -> {
+                throw new IllegalArgumentException("bad reply");
+            }));
+        }
+
+        assertEquals(ChainCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void closesAgainOnceTheProbesSucceed() throws Exception {
+        openBreaker();
+        ReflectionTestUtils.setField(breaker, "openMs", 0L);
+
+        assertTrue(breaker.isCallPermitted());
+        succeed();
+        assertEquals(ChainCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        succeed();
+
+        assertEquals(ChainCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getStats().get("windowCalls"));
+    }
+
+    @Test
+    void reopensWhenAProbeFails() throws Exception {
+        openBreaker();
+        ReflectionTestUtils.setField(breaker, "openMs", 0L);
+
+        succeed();
+        fail(new IOException("connection refused"));
+
+        assertEquals(ChainCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2L, breaker.getStats().get("opens"));
+    }
+
+    @Test
+    void refusesCallsBeyondTheProbesWhileHalfOpen() throws Exception {
+        openBreaker();
+        ReflectionTestUtils.setField(breaker, "openMs", 0L);
+
+        // the probes are still out when a third call comes in
+        breaker.call(() -> {
+            breaker.call(() -> {
+                assertFalse(breaker.isCallPermitted());
+                assertThrows(ChainCircuitBreaker.OpenException.class, this::succeed);
+                return null;
+            });
+            return null;
+        });
+
+        assertEquals(ChainCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(1L, breaker.getStats().get("refused"));
+    }
+
+    private void openBreaker() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            fail(new IOException("connection refused"));
+        }
+        assertEquals(ChainCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void succeed() throws IOException {
+        breaker.call(() -> "ok");
+    }
+
+    private void fail(IOException error) {
+        assertThrows(IOException.class, () -> breaker.call(() -> {
+            throw error;
+        }));
+    }
+}
@@ -0,0 +1,99 @@
+package net.codejava.smartcontract;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.TransactionEncoder;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.utils.Numeric;
+
+class LocalChainServiceTest {
+
+    private static final long CHAIN_ID = 43113;
+    private static final String CONTRACT = "0x5fbdb2315678afecb367f032d93f642f64180aa3";
+    private static final String RECIPIENT = "0x70997970c51812dc3a010c7d01b50e0d17dc79c8";
+    private static final BigInteger BLOCK_GAS_LIMIT = BigInteger.valueOf(15_000_000);
+
+    private final Credentials credentials =
+        Credentials.create("0xac0974bec39a17e36ba4a6b4d238ff944bacb478cbed5efcae784d7bf4f2ff80");
+
+    private LocalChainService chain;
+    private Web3j web3j;
+    private long nonce;
+
+    @BeforeEach
+    void setUp() {
+        // blocks are mined by hand
+        chain = new LocalChainService(CONTRACT, CHAIN_ID, 3_600_000L, 0, 0);
+        web3j = Web3j.build(chain);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chain.close();
+    }
+
+    @Test
+    void leavesWhatDoesNotFitForTheNextBlock() throws Exception {
+        String first = send(BLOCK_GAS_LIMIT).getTransactionHash();
+        String second = send(BLOCK_GAS_LIMIT).getTransactionHash();
+
+        assertTrue(mine());
+        assertEquals(1, block(1).getTransactions().size());
+        assertNotNull(web3j.ethGetTransactionReceipt(first).send().getResult());
+        assertFalse(web3j.ethGetTransactionReceipt(second).send().getTransactionReceipt().isPresent());
+
+        assertFalse(mine());
+        assertEquals(1, block(2).getTransactions().size());
+        assertTrue(web3j.ethGetTransactionReceipt(second).send().getTransactionReceipt().isPresent());
+    }
+
+    @Test
+    void packsTransactionsWhoseGasFits() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            send(BigInteger.valueOf(21_000));
+        }
+
+        assertFalse(mine());
+
+        EthBlock.Block block = block(1);
+        assertEquals(3, block.getTransactions().size());
+        assertEquals(BigInteger.valueOf(63_000), block.getGasUsed());
+    }
+
+    @Test
+    void rejectsATransactionThatCouldNeverFitInABlock() throws Exception {
+        EthSendTransaction response = send(BLOCK_GAS_LIMIT.add(BigInteger.ONE));
+
+        assertTrue(response.hasError());
+        assertEquals("exceeds block gas limit", response.getError().getMessage());
+    }
+
+    private EthSendTransaction send(BigInteger gasLimit) throws Exception {
+        RawTransaction transaction = RawTransaction.createEtherTransaction(
+            BigInteger.valueOf(nonce++), BigInteger.valueOf(25_000_000_000L), gasLimit, RECIPIENT, BigInteger.ONE);
+        String signed = Numeric.toHexString(TransactionEncoder.signMessage(transaction, CHAIN_ID, credentials));
+        return web3j.ethSendRawTransaction(signed).send();
+    }
+
+    private boolean mine() {
+        return ReflectionTestUtils.invokeMethod(chain, "mine");
+    }
+
+    private EthBlock.Block block(long number) throws Exception {
+        return web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(number)), false).send().getBlock();
+    }
+}
@@ -0,0 +1,244 @@
+package net.codejava.smartcontract;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthGetTransactionCount;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+
+@ExtendWith(MockitoExtension.class)
+class SharedTransactionManagerTest {
+
+    private static final String PRIVATE_KEY = "0x4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318";
+    private static final String CONTRACT = "0x5fbdb2315678afecb367f032d93f642f64180aa3";
+
+    @Mock
+    private RpcClient rpcClient;
+
+    @Mock
+    private Web3j web3j;
+
+    @Mock
+    private GasOracle gasOracle;
+
+    private SharedTransactionManager manager;
+
+    // the node's pending transaction count, which only moves when the next nonce in line arrives
+    private final AtomicLong pending = new AtomicLong(5);
+    // what the node answers to each send, in order, success once empty; an IOException is thrown
+    private final Deque<Object> replies = new ArrayDeque<>();
+    // whether a send answered with an error still entered the pool
+    private boolean errorsTakeTheNonce;
+    private final List<BigInteger> sentNonces = new ArrayList<>();
+    private final List<String> sentTransactions = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(rpcClient.getWeb3j()).thenReturn(web3j);
+        when(web3j.ethGetTransactionCount(anyString(), any(DefaultBlockParameter.class)))
+            .thenAnswer(invocation -> request(transactionCount(pending.get())));
+        when(web3j.ethSendRawTransaction(anyString())).thenAnswer(invocation -> {
+            String signed = invocation.getArgument(0);
+            BigInteger nonce = TransactionDecoder.decode(signed).getNonce();
+            sentTransactions.add(signed);
+            sentNonces.add(nonce);
+            Object reply = replies.poll();
+            if (reply instanceof IOException) {
+                Request<?, EthSendTransaction> failing = mock(Request.class);
+                when(failing.send()).thenThrow((IOException) reply);
+                return failing;
+            }
+            EthSendTransaction response = reply != null ? (EthSendTransaction) reply : sent();
+            if ((!response.hasError() || errorsTakeTheNonce) && nonce.longValue() == pending.get()) {
+                pending.incrementAndGet();
+            }
+            return request(response);
+        });
+        manager = new SharedTransactionManager(rpcClient, gasOracle, PRIVATE_KEY);
+        // resolution is triggered by the tests
+        ReflectionTestUtils.setField(manager, "resyncIntervalMs", 3_600_000L);
+        manager.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.stop();
+    }
+
+    @Test
+    void handsOutConsecutiveNoncesFromThePendingCount() throws Exception {
+        send();
+        send();
+        send();
+
+        assertEquals(nonces(5, 6, 7), sentNonces);
+        verify(web3j).ethGetTransactionCount(anyString(), any(DefaultBlockParameter.class));
+    }
+
+    @Test
+    void reusesANonceTheNodeTurnedAway() throws Exception {
+        replies.add(rejected("insufficient funds for gas * price + value"));
+
+        assertTrue(send().hasError());
+        send();
+        send();
+
+        assertEquals(nonces(5, 5, 6), sentNonces);
+    }
+
+    @Test
+    void refreshesTheGasPriceAfterAnUnderpricedRejection() throws Exception {
+        replies.add(rejected("transaction underpriced"));
+
+        send();
+        send();
+
+        assertEquals(nonces(5, 5), sentNonces);
+        verify(gasOracle).priceRejected();
+    }
+
+    @Test
+    void countsAnAlreadyKnownTransactionAsSent() throws Exception {
+        replies.add(rejected("already known"));
+
+        EthSendTransaction response = send();
+        send();
+
+        assertFalse(response.hasError());
+        assertEquals(Hash.sha3(sentTransactions.get(0)), response.getTransactionHash());
+        assertEquals(nonces(5, 6), sentNonces);
+        assertEquals(0, manager.getNonceStats().get("gaps"));
+    }
+
+    @Test
+    void keepsANonceWithAnUnclearErrorThatTheNodeUsed() throws Exception {
+        errorsTakeTheNonce = true;
+        replies.add(rejected("internal error"));
+
+        send();
+        awaitResync();
+        send();
+
+        assertEquals(nonces(5, 6), sentNonces);
+        assertEquals(0, manager.getNonceStats().get("gaps"));
+        assertEquals(0, manager.getNonceStats().get("uncertain"));
+    }
+
+    @Test
+    void refillsANonceWithAnUnclearErrorThatTheNodeDidNotUse() throws Exception {
+        replies.add(rejected("internal error"));
+
+        send();
+        awaitResync();
+        send();
+        send();
+
+        assertEquals(nonces(5, 5, 6), sentNonces);
+    }
+
+    @Test
+    void holdsANonceWhoseSendFailedInTransit() throws Exception {
+        replies.add(new IOException("connection reset"));
+
+        assertThrows(IOException.class, this::send);
+        send();
+        assertEquals(nonces(5, 6), sentNonces);
+        assertEquals(1, manager.getNonceStats().get("uncertain"));
+
+        resolveUncertain();
+        send();
+
+        assertEquals(nonces(5, 6, 5), sentNonces);
+    }
+
+    @Test
+    void resyncsAndRetriesWhenTheNonceIsTooLow() throws Exception {
+        send();
+        // someone else sent from this key
+        pending.set(9);
+        replies.add(rejected("nonce too low"));
+
+        EthSendTransaction response = send();
+
+        assertFalse(response.hasError());
+        assertEquals(nonces(5, 6, 9), sentNonces);
+        verify(gasOracle, never()).priceRejected();
+    }
+
+    private EthSendTransaction send() throws IOException {
+        return manager.sendTransaction(BigInteger.ONE, BigInteger.valueOf(100_000), CONTRACT, "0x", BigInteger.ZERO);
+    }
+
+    private void resolveUncertain() {
+        ReflectionTestUtils.invokeMethod(manager, "resolveUncertain");
+    }
+
+    // waits for a resync the manager queued on its own thread
+    private void awaitResync() throws Exception {
+        ScheduledExecutorService scheduler = (ScheduledExecutorService) ReflectionTestUtils.getField(manager, "scheduler");
+        scheduler.submit(() -> { }).get();
+    }
+
+    private static List<BigInteger> nonces(long... values) {
+        List<BigInteger> nonces = new ArrayList<>();
+        for (long value : values) {
+            nonces.add(BigInteger.valueOf(value));
+        }
+        return nonces;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Response<?>> Request<?, T> request(T response) throws IOException {
+        Request<?, T> request = mock(Request.class);
+        when(request.send()).thenReturn(response);
+        return request;
+    }
+
+    private static EthGetTransactionCount transactionCount(long count) {
+        EthGetTransactionCount response = new EthGetTransactionCount();
+        response.setResult("0x" + Long.toHexString(count));
+        return response;
+    }
+
+    private static EthSendTransaction sent() {
+        EthSendTransaction response = new EthSendTransaction();
+        response.setResult("0x" + Long.toHexString(System.nanoTime()));
+        return response;
+    }
+
+    private static EthSendTransaction rejected(String message) {
+        EthSendTransaction response = new EthSendTransaction();
+        response.setError(new Response.Error(-32000, message));
+        return response;
+    }
+}
@@ -0,0 +1,196 @@
+package net.codejava.smartcontract;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.web3j.abi.EventEncoder;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.utils.Numeric;
+
+@ExtendWith(MockitoExtension.class)
+class VoteBatcherTest {
+
+    private static final String TX_HASH = "0xbatch";
+
+    @Mock
+    private SharedTransactionManager transactionManager;
+
+    @Mock
+    private ReceiptTracker receiptTracker;
+
+    @Mock
+    private ChainCircuitBreaker circuitBreaker;
+
+    @Mock
+    private GasOracle gasOracle;
+
+    @InjectMocks
+    private VoteBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(batcher, "contractAddress", "0x5fbdb2315678afecb367f032d93f642f64180aa3");
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+        ReflectionTestUtils.setField(batcher, "commitmentSecret", "commitment-secret");
+        // room for two votes per batch; only full batches are sent during a test
+        ReflectionTestUtils.setField(batcher, "maxGas", 120_000L);
+        ReflectionTestUtils.setField(batcher, "baseGas", 50_000L);
+        ReflectionTestUtils.setField(batcher, "gasPerVote", 35_000L);
+        ReflectionTestUtils.setField(batcher, "maxDelayMs", 3_600_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.stop();
+    }
+
+    @Test
+    void refusesToStartWithoutACommitmentSecret() {
+        ReflectionTestUtils.setField(batcher, "commitmentSecret", "");
+
+        assertThrows(IllegalStateException.class, batcher::start);
+    }
+
+    @Test
+    void derivesOneStableCommitmentPerVoter() {
+        String alice = batcher.commitmentOf("alice");
+
+        assertEquals(alice, batcher.commitmentOf("alice"));
+        assertNotEquals(alice, batcher.commitmentOf("bob"));
+        assertEquals(32, Numeric.hexStringToByteArray(alice).length);
+
+        ReflectionTestUtils.setField(batcher, "commitmentSecret", "another-secret");
+        assertNotEquals(alice, batcher.commitmentOf("alice"));
+    }
+
+    @Test
+    void hasNoCommitmentsWhileDisabled() {
+        ReflectionTestUtils.setField(batcher, "enabled", false);
+
+        assertNull(batcher.commitmentOf("alice"));
+        assertThrows(IllegalStateException.class, () -> batcher.enqueue(batcher.commitmentOf("alice"), BigInteger.ONE));
+    }
+
+    @Test
+    void settlesEachVoteFromTheBatchReceipt() throws Exception {
+        String alice = batcher.commitmentOf("alice");
+        String bob = batcher.commitmentOf("bob");
+        // bob had already been counted, so the contract skipped him
+        TransactionReceipt receipt = receipt("0x1", alice);
+        stubSend(CompletableFuture.completedFuture(receipt));
+        batcher.start();
+
+        CompletableFuture<TransactionReceipt> aliceVote = batcher.enqueue(alice, BigInteger.ONE);
+        CompletableFuture<TransactionReceipt> bobVote = batcher.enqueue(bob, BigInteger.valueOf(2));
+
+        assertSame(receipt, aliceVote.get(5, TimeUnit.SECONDS));
+        assertFailed(bobVote, "skipped");
+        verify(transactionManager, times(1)).sendTransaction(any(), any(), any(), anyString(), any());
+    }
+
+    @Test
+    void failsEveryVoteOfARevertedBatch() throws Exception {
+        String alice = batcher.commitmentOf("alice");
+        stubSend(CompletableFuture.completedFuture(receipt("0x0", alice)));
+        batcher.start();
+
+        CompletableFuture<TransactionReceipt> aliceVote = batcher.enqueue(alice, BigInteger.ONE);
+        CompletableFuture<TransactionReceipt> bobVote = batcher.enqueue(batcher.commitmentOf("bob"), BigInteger.ONE);
+
+        assertFailed(aliceVote, "reverted");
+        assertFailed(bobVote, "reverted");
+    }
+
+    @Test
+    void failsEveryVoteWhenTheReceiptNeverComes() throws Exception {
+        CompletableFuture<TransactionReceipt> lost = new CompletableFuture<>();
+        lost.completeExceptionally(new IOException("receipt timed out"));
+        stubSend(lost);
+        batcher.start();
+
+        CompletableFuture<TransactionReceipt> aliceVote = batcher.enqueue(batcher.commitmentOf("alice"), BigInteger.ONE);
+        CompletableFuture<TransactionReceipt> bobVote = batcher.enqueue(batcher.commitmentOf("bob"), BigInteger.ONE);
+
+        assertFailed(aliceVote, "receipt timed out");
+        assertFailed(bobVote, "receipt timed out");
+    }
+
+    @Test
+    void failsEveryVoteOfARejectedBatch() throws Exception {
+        passThroughBreaker();
+        EthSendTransaction rejected = new EthSendTransaction();
+        rejected.setError(new Response.Error(-32000, "insufficient funds"));
+        when(transactionManager.sendTransaction(any(), any(), any(), anyString(), any())).thenReturn(rejected);
+        batcher.start();
+
+        CompletableFuture<TransactionReceipt> aliceVote = batcher.enqueue(batcher.commitmentOf("alice"), BigInteger.ONE);
+        CompletableFuture<TransactionReceipt> bobVote = batcher.enqueue(batcher.commitmentOf("bob"), BigInteger.ONE);
+
+        assertFailed(aliceVote, "insufficient funds");
+        assertFailed(bobVote, "insufficient funds");
+    }
+
+    private void stubSend(CompletableFuture<TransactionReceipt> receipt) throws IOException {
+        passThroughBreaker();
+        EthSendTransaction sent = new EthSendTransaction();
+        sent.setResult(TX_HASH);
+        when(transactionManager.sendTransaction(any(), any(), any(), anyString(), any())).thenReturn(sent);
+        when(receiptTracker.track(TX_HASH)).thenReturn(receipt);
+    }
+
+    private void passThroughBreaker() throws IOException {
+        when(circuitBreaker.call(any())).thenAnswer(invocation ->
+            ((ChainCircuitBreaker.ChainCall<?>) invocation.getArgument(0)).call());
+    }
+
+    private static TransactionReceipt receipt(String status, String... countedCommitments) {
+        List<Log> logs = new ArrayList<>();
+        for (String commitment : countedCommitments) {
+            Log log = new Log();
+            log.setTopics(Arrays.asList(
+                EventEncoder.encode(VoteBatcher.COMMITMENT_VOTED),
+                commitment,
+                Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64)));
+            logs.add(log);
+        }
+        TransactionReceipt receipt = new TransactionReceipt();
+        receipt.setTransactionHash(TX_HASH);
+        receipt.setStatus(status);
+        receipt.setLogs(logs);
+        return receipt;
+    }
+
+    private static void assertFailed(CompletableFuture<TransactionReceipt> vote, String reason) throws Exception {
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> vote.get(5, TimeUnit.SECONDS));
+        assertTrue(String.valueOf(failure.getCause().getMessage()).contains(reason), failure.getCause().toString());
+    }
+}